@@ -5,7 +5,10 @@ mkdir -p build/$PLATFORM
 cd build/$PLATFORM
 
 ZLIB_VERSION=1.3.1
-if [[ ! -e "zlib-$ZLIB_VERSION.tar.gz" ]]; then
+if [[ -n "${ZLIB_TARBALL:-}" ]]; then
+    # use a local copy of the archive, for example in functional tests
+    cp "$ZLIB_TARBALL" "zlib-$ZLIB_VERSION.tar.gz"
+elif [[ ! -e "zlib-$ZLIB_VERSION.tar.gz" ]]; then
     curl -L "http://zlib.net/zlib-$ZLIB_VERSION.tar.gz" -o "zlib-$ZLIB_VERSION.tar.gz"
 fi
 echo "9a93b2b7dfdac77ceba5a558a580e74667dd6fede4585b91eefb60f03b72df23  zlib-$ZLIB_VERSION.tar.gz" | shasum -a 256 -c -
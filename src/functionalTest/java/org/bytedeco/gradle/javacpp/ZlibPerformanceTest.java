@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * Builds a copy of samples/zlib with TestKit, using the local zlib tarball given by the "zlib.tarball"
+ * system property, and checks how long the builds take and which tasks execute in common scenarios.
+ * Without a tarball, the test gets skipped, unless the "zlib.required" system property is true.
+ * The budgets in seconds can be adjusted with the "budget.clean", "budget.noop", "budget.header",
+ * and "budget.java" system properties.
+ */
+public class ZlibPerformanceTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    File projectDir;
+    Map<String, String> environment;
+
+    static long getBudget(String scenario, long defaultSeconds) {
+        return Long.parseLong(System.getProperty("budget." + scenario, String.valueOf(defaultSeconds)));
+    }
+
+    static void copy(final Path source, final Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.getFileName().toString().equals("build") || dir.getFileName().toString().equals(".gradle")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+            @Override public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file)));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    static void append(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    BuildResult build(String scenario, long budget, String... tasks) {
+        List<String> arguments = new ArrayList<String>(Arrays.asList(tasks));
+        arguments.add("--stacktrace");
+        long start = System.nanoTime();
+        BuildResult result = GradleRunner.create()
+                .withProjectDir(projectDir)
+                .withPluginClasspath()
+                .withEnvironment(environment)
+                .withArguments(arguments)
+                .build();
+        long seconds = (System.nanoTime() - start) / 1000000000;
+
+        List<String> executed = new ArrayList<String>();
+        for (BuildTask task : result.getTasks()) {
+            if (task.getOutcome() == TaskOutcome.SUCCESS) {
+                executed.add(task.getPath());
+            }
+        }
+        assertTrue(scenario + " build took " + seconds + " s, over its budget of " + budget + " s, and executed " + executed, seconds <= budget);
+        return result;
+    }
+
+    static void assertOutcome(BuildResult result, TaskOutcome outcome, String... paths) {
+        for (String path : paths) {
+            assertNotNull("Task " + path + " did not run", result.task(path));
+            assertEquals("Outcome of " + path, outcome, result.task(path).getOutcome());
+        }
+    }
+
+    @Test public void zlibBuildStaysIncremental() throws IOException {
+        File tarball = new File(System.getProperty("zlib.tarball", ""));
+        if (Boolean.getBoolean("zlib.required")) {
+            assertTrue("zlib.tarball is not set to an existing file: " + tarball, tarball.isFile());
+        }
+        assumeTrue("zlib.tarball is not set to an existing file", tarball.isFile());
+        String os = System.getProperty("os.name").toLowerCase();
+        assumeTrue("build.sh needs a Unix-like system", !os.startsWith("windows"));
+
+        projectDir = folder.newFolder("zlib");
+        copy(new File(System.getProperty("samples.dir", "samples"), "zlib").toPath(), projectDir.toPath());
+        // use the version of the plugin under test
+        File buildFile = new File(projectDir, "build.gradle");
+        String script = new String(Files.readAllBytes(buildFile.toPath()), StandardCharsets.UTF_8);
+        Files.write(buildFile.toPath(), script.replaceFirst("(id 'org.bytedeco.gradle-javacpp-build') version '[^']*'", "$1")
+                .getBytes(StandardCharsets.UTF_8));
+
+        environment = new HashMap<String, String>(System.getenv());
+        environment.put("ZLIB_TARBALL", tarball.getAbsolutePath());
+
+        // the native library of zlib gets built only once, since build commands are never up to date
+        String[] tasks = {"jar", "javacppJar"};
+        String[] incremental = {"jar", "javacppJar", "-x", "javacppBuildCommand"};
+
+        BuildResult result = build("clean", getBudget("clean", 600), tasks);
+        assertOutcome(result, TaskOutcome.SUCCESS, ":javacppBuildCommand", ":javacppBuildParser", ":compileJava", ":javacppBuildCompiler");
+
+        // the headers and libraries recorded by the first build after clean become inputs, so the compiler runs once more
+        result = build("record", getBudget("header", 120), incremental);
+        assertOutcome(result, TaskOutcome.UP_TO_DATE, ":compileJava");
+        result = build("noop", getBudget("noop", 60), incremental);
+        assertOutcome(result, TaskOutcome.UP_TO_DATE, ":javacppBuildParser", ":compileJava", ":javacppBuildCompiler", ":jar", ":javacppJar");
+
+        File header = null;
+        for (File dir : new File(projectDir, "build").listFiles()) {
+            if (new File(dir, "include/zconf.h").isFile()) {
+                header = new File(dir, "include/zconf.h");
+            }
+        }
+        assertNotNull("Could not find zconf.h", header);
+        append(header, "\n/* touched */\n");
+        result = build("header", getBudget("header", 120), incremental);
+        // zconf.h is included by zlib.h, but only zlib.h gets parsed
+        assertOutcome(result, TaskOutcome.SUCCESS, ":javacppBuildCompiler");
+        assertOutcome(result, TaskOutcome.UP_TO_DATE, ":javacppBuildParser", ":compileJava");
+
+        File source = new File(projectDir, "src/main/java/org/bytedeco/zlib/ZlibVersion.java");
+        source.getParentFile().mkdirs();
+        Files.write(source.toPath(), ("package org.bytedeco.zlib;\n\n"
+                + "public class ZlibVersion {\n    public static final String VERSION = \"1.3.1\";\n}\n").getBytes(StandardCharsets.UTF_8));
+        result = build("java", getBudget("java", 120), incremental);
+        assertOutcome(result, TaskOutcome.SUCCESS, ":compileJava", ":jar");
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * A Gradle task that generates the sources of JMH benchmarks for the classes of a preset: one that measures
+ * the time {@code Loader.load()} takes the first time for each class with native methods, in a fresh JVM every time,
+ * and one that measures round trips through JNI for each of the selected static native methods, called with the
+ * arguments given as Java expressions, or with zeros when none are given and all parameters are primitive.
+ * The classes get loaded without being initialized, so this does not need the native libraries.
+ *
+ * @author Samuel Audet
+ */
+@CacheableTask
+public class BenchmarkTask extends DefaultTask {
+    /** The package of the generated classes. */
+    static final String PACKAGE = "javacpp.benchmarks";
+
+    /** The directories and JAR files with the class files of the preset. */
+    FileCollection presetClasses = null;
+
+    /** Consider as part of the preset only these classes or packages (suffixed with .* or .**), or all when null. */
+    String[] classOrPackageNames = null;
+
+    /** The fully qualified names of static native methods, like "org.example.global.foo.bar", mapped to their arguments, like "1, 2". */
+    Map<String, String> methods = new TreeMap<String, String>();
+
+    /** Output the generated sources to this directory. */
+    File outputDirectory = null;
+
+    @Classpath       public FileCollection      getPresetClasses()       { return presetClasses;       } public void setPresetClasses      (FileCollection f)      { presetClasses       = f; }
+    @Optional @Input public String[]            getClassOrPackageNames() { return classOrPackageNames; } public void setClassOrPackageNames(String[] s)            { classOrPackageNames = s; }
+    @Input           public Map<String, String> getMethods()             { return methods;             } public void setMethods            (Map<String, String> m) { methods             = m; }
+    @OutputDirectory public File                getOutputDirectory()     { return outputDirectory;     } public void setOutputDirectory    (File f)                { outputDirectory     = f; }
+
+    @TaskAction public void generate() throws IOException {
+        Set<File> files = getPresetClasses().getFiles();
+        URL[] urls = new URL[files.size()];
+        int n = 0;
+        for (File file : files) {
+            urls[n++] = file.toURI().toURL();
+        }
+        URLClassLoader loader = new URLClassLoader(urls, getClass().getClassLoader());
+        try {
+            Set<String> classNames = new TreeSet<String>();
+            for (String name : UsageTask.readClasses(getPresetClasses()).keySet()) {
+                name = name.replace('/', '.');
+                if (BuildPlugin.isClassIncluded(UsageTask.getTopLevelName(name).replace('.', '/'), getClassOrPackageNames())
+                        && hasNativeMethods(loader, name)) {
+                    classNames.add(UsageTask.getTopLevelName(name));
+                }
+            }
+            List<String[]> calls = new ArrayList<String[]>();
+            for (Map.Entry<String, String> e : getMethods().entrySet()) {
+                String[] call = getCall(loader, e.getKey(), e.getValue());
+                if (call != null) {
+                    calls.add(call);
+                } else {
+                    getLogger().warn("Could not find static native method " + e.getKey() + " to call with (" + e.getValue() + ")");
+                }
+            }
+
+            File directory = new File(getOutputDirectory(), PACKAGE.replace('.', '/'));
+            directory.mkdirs();
+            Files.write(new File(directory, "LoadBenchmark.java").toPath(),
+                    getLoadBenchmark(classNames).getBytes(StandardCharsets.UTF_8));
+            Files.write(new File(directory, "CallBenchmark.java").toPath(),
+                    getCallBenchmark(classNames, calls).getBytes(StandardCharsets.UTF_8));
+        } finally {
+            loader.close();
+        }
+    }
+
+    /** Returns true when the class, loaded without initializing it, declares at least one native method. */
+    static boolean hasNativeMethods(ClassLoader loader, String name) {
+        try {
+            for (Method m : Class.forName(name, false, loader).getDeclaredMethods()) {
+                if (Modifier.isNative(m.getModifiers())) {
+                    return true;
+                }
+            }
+        } catch (ClassNotFoundException | LinkageError e) {
+            // missing dependencies -> probably not part of the preset
+        }
+        return false;
+    }
+
+    /**
+     * Returns the return type and the source of an expression calling the static native method with the arguments,
+     * with zeros for all primitive parameters when arguments are empty, or null if there is no such method.
+     */
+    static String[] getCall(ClassLoader loader, String method, String arguments) {
+        int i = method.lastIndexOf('.');
+        if (i < 0) {
+            return null;
+        }
+        String className = method.substring(0, i), methodName = method.substring(i + 1);
+        Class<?> cls = null;
+        try {
+            cls = Class.forName(className, false, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+        int count = splitArguments(arguments).size();
+        for (Method m : cls.getDeclaredMethods()) {
+            int modifiers = m.getModifiers();
+            if (!m.getName().equals(methodName) || !Modifier.isStatic(modifiers) || !Modifier.isNative(modifiers)) {
+                continue;
+            }
+            Class<?>[] types = m.getParameterTypes();
+            String args = arguments != null ? arguments : "";
+            if (count == 0 && types.length > 0) {
+                args = getZeros(types);
+                if (args == null) {
+                    continue;
+                }
+            } else if (count != types.length) {
+                continue;
+            }
+            return new String[] {m.getReturnType().getCanonicalName(),
+                    cls.getName().replace('$', '.') + "." + methodName + "(" + args.trim() + ")"};
+        }
+        return null;
+    }
+
+    /** Returns zeros separated by commas for the primitive types, or null if some are not primitive. */
+    static String getZeros(Class<?>[] types) {
+        String zeros = "";
+        for (Class<?> type : types) {
+            if (!type.isPrimitive()) {
+                return null;
+            }
+            zeros += (zeros.length() > 0 ? ", " : "") + (type == boolean.class ? "false" : "(" + type.getName() + ")0");
+        }
+        return zeros;
+    }
+
+    /** Splits arguments at commas that are not inside parentheses, brackets, braces, or literals. */
+    static List<String> splitArguments(String arguments) {
+        List<String> list = new ArrayList<String>();
+        if (arguments == null || arguments.trim().length() == 0) {
+            return list;
+        }
+        int depth = 0, start = 0;
+        char quote = 0;
+        for (int i = 0; i < arguments.length(); i++) {
+            char c = arguments.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                list.add(arguments.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        list.add(arguments.substring(start).trim());
+        return list;
+    }
+
+    /** Returns a name usable as identifier for the class or method. */
+    static String getIdentifier(String name) {
+        return name.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    /** Returns the source of a benchmark class loading each class once per fork, which is when the libraries actually get loaded. */
+    static String getLoadBenchmark(Set<String> classNames) {
+        StringBuilder s = new StringBuilder();
+        s.append("package " + PACKAGE + ";\n\n")
+         .append("import java.util.concurrent.TimeUnit;\n")
+         .append("import org.openjdk.jmh.annotations.*;\n\n")
+         .append("@BenchmarkMode(Mode.SingleShotTime)\n")
+         .append("@OutputTimeUnit(TimeUnit.MILLISECONDS)\n")
+         .append("@Fork(5)\n")
+         .append("@Warmup(iterations = 0)\n")
+         .append("@Measurement(iterations = 1)\n")
+         .append("public class LoadBenchmark {\n");
+        for (String name : classNames) {
+            s.append("    @Benchmark public Object load_" + getIdentifier(name) + "() {\n")
+             .append("        return org.bytedeco.javacpp.Loader.load(" + name.replace('$', '.') + ".class);\n")
+             .append("    }\n");
+        }
+        return s.append("}\n").toString();
+    }
+
+    /** Returns the source of a benchmark class calling each method after loading all classes during setup. */
+    static String getCallBenchmark(Set<String> classNames, List<String[]> calls) {
+        StringBuilder s = new StringBuilder();
+        s.append("package " + PACKAGE + ";\n\n")
+         .append("import java.util.concurrent.TimeUnit;\n")
+         .append("import org.openjdk.jmh.annotations.*;\n\n")
+         .append("@BenchmarkMode(Mode.AverageTime)\n")
+         .append("@OutputTimeUnit(TimeUnit.NANOSECONDS)\n")
+         .append("@State(Scope.Benchmark)\n")
+         .append("public class CallBenchmark {\n")
+         .append("    @Setup public void load() {\n");
+        for (String name : classNames) {
+            s.append("        org.bytedeco.javacpp.Loader.load(" + name.replace('$', '.') + ".class);\n");
+        }
+        s.append("    }\n");
+        for (int i = 0; i < calls.size(); i++) {
+            // return values, without boxing them, to let JMH consume them
+            String type = calls.get(i)[0], call = calls.get(i)[1];
+            String method = call.substring(0, call.indexOf('('));
+            s.append("\n")
+             .append("    @Benchmark public " + type + " call" + i + "_" + getIdentifier(method.substring(method.lastIndexOf('.') + 1)) + "() {\n")
+             .append("        " + (type.equals("void") ? "" : "return ") + call + ";\n")
+             .append("    }\n");
+        }
+        return s.append("}\n").toString();
+    }
+}
@@ -23,8 +23,18 @@ package org.bytedeco.gradle.javacpp;
 
 import java.io.File;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import org.bytedeco.javacpp.tools.CommandExecutor;
 import org.bytedeco.javacpp.tools.Logger;
 import org.gradle.initialization.DefaultBuildCancellationToken;
@@ -39,12 +49,597 @@ import org.gradle.process.internal.DefaultExecAction;
  * @author Samuel Audet
  */
 public class BuildExecutor extends CommandExecutor {
+    /** Precompile into this directory the headers included by generated JNI code, when not null. */
+    File precompiledHeaderDirectory = null;
+
+    /** Compile into this directory, which projects can share, the common jnijavacpp.cpp once per content and compiler options, when not null. */
+    File runtimeDirectory = null;
+
+    /** Record in this file, in the format of make, the headers included and the libraries linked by each compilation, when not null. */
+    File dependencyFile = null;
+
+    /** Limit the number of subprocesses running concurrently with this governor, when not null. */
+    BuildGovernor governor = null;
+
+    /** Acquire this number of permits from {@link #governor} for each subprocess. */
+    int permits = 1;
+
+    /** Use ProcessBuilder as in {@link CommandExecutor}, for worker processes where the services of Gradle are not available. */
+    boolean forked = false;
+
+    final Logger logger;
+
     public BuildExecutor(Logger logger) {
         super(logger);
+        this.logger = logger;
     }
 
     @Override public int executeCommand(List<String> command, File workingDirectory,
             Map<String, String> environmentVariables) throws IOException, InterruptedException {
+        if (runtimeDirectory != null && isCompiler(command)) {
+            command = compileRuntime(command, workingDirectory, environmentVariables);
+        }
+        if (precompiledHeaderDirectory != null && isCompiler(command)) {
+            command = precompileHeader(command, workingDirectory, environmentVariables);
+        }
+        if (dependencyFile == null || !isCompiler(command)) {
+            return execute(command, workingDirectory, environmentVariables);
+        }
+
+        // unlike -MD, this also works when compiling multiple source files with a single command
+        File depfile = File.createTempFile("javacpp", ".d");
+        try {
+            Map<String, String> environment = new LinkedHashMap<String, String>();
+            if (environmentVariables != null) {
+                environment.putAll(environmentVariables);
+            }
+            environment.put("SUNPRO_DEPENDENCIES", depfile.getPath() + " " + getOutput(command, workingDirectory));
+            int exitValue = execute(command, workingDirectory, environment);
+            if (exitValue == 0 && depfile.length() > 0) {
+                updateDependencies(command, workingDirectory, depfile);
+            }
+            return exitValue;
+        } finally {
+            depfile.delete();
+        }
+    }
+
+    /** Returns true if the command runs GCC or Clang on C++ source files. */
+    static boolean isCompiler(List<String> command) {
+        String name = new File(command.get(0)).getName().toLowerCase();
+        if (name.endsWith(".exe")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        return name.matches(".*(gcc|g\\+\\+|clang|clang\\+\\+|c\\+\\+)(-[0-9.]+)?") && getSources(command).size() > 0;
+    }
+
+    /** Returns the C++ source files found in the command. */
+    static List<String> getSources(List<String> command) {
+        List<String> sources = new ArrayList<String>();
+        for (String arg : command.subList(1, command.size())) {
+            if (!arg.startsWith("-") && (arg.endsWith(".cpp") || arg.endsWith(".cc") || arg.endsWith(".cxx") || arg.endsWith(".mm"))) {
+                sources.add(arg);
+            }
+        }
+        return sources;
+    }
+
+    /** Returns the arguments of the command that affect compilation, without sources, output file, or linker options. */
+    static List<String> getCompilerOptions(List<String> command) {
+        List<String> options = new ArrayList<String>();
+        List<String> sources = getSources(command);
+        for (int i = 1; i < command.size(); i++) {
+            String arg = command.get(i);
+            if (arg.equals("-o") || arg.equals("-framework") || arg.equals("-install_name")) {
+                i++;
+            } else if (sources.contains(arg) || arg.startsWith("-l") || arg.startsWith("-L") || arg.startsWith("-Wl,")
+                    || arg.equals("-shared") || arg.equals("-dynamiclib") || arg.equals("-rdynamic") || arg.equals("-s")
+                    || arg.matches(".*\\.(a|o|so|dylib|lib|obj)(\\.[0-9.]+)?") && !arg.startsWith("-")) {
+                continue;
+            } else {
+                options.add(arg);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Returns the compiler options of the command that may affect jnijavacpp.cpp, which includes only
+     * jni.h and system headers, so without the include paths of libraries, letting all presets share it.
+     */
+    static List<String> getRuntimeOptions(List<String> command) {
+        List<String> options = new ArrayList<String>();
+        List<String> compilerOptions = getCompilerOptions(command);
+        for (int i = 0; i < compilerOptions.size(); i++) {
+            String arg = compilerOptions.get(i);
+            if (arg.equals("-include")) {
+                i++;
+            } else if (arg.startsWith("-I")) {
+                String path = arg.length() > 2 ? arg.substring(2) : i + 1 < compilerOptions.size() ? compilerOptions.get(++i) : "";
+                if (new File(path, "jni.h").isFile() || new File(path, "jni_md.h").isFile()) {
+                    options.add("-I" + path);
+                }
+            } else {
+                options.add(arg);
+            }
+        }
+        return options;
+    }
+
+    /** Returns the path of the compiler with its size and modification time, to tell apart different versions installed at the same place. */
+    static String getCompilerVersion(String compiler, Map<String, String> environmentVariables) {
+        File file = findExecutable(compiler, environmentVariables);
+        return file.getPath() + " " + file.length() + " " + file.lastModified();
+    }
+
+    /** Returns the file of the executable, as found on the PATH of the environment variables, or of this process, when not a path. */
+    static File findExecutable(String compiler, Map<String, String> environmentVariables) {
+        File file = new File(compiler);
+        String path = environmentVariables != null && environmentVariables.get("PATH") != null
+                ? environmentVariables.get("PATH") : System.getenv("PATH");
+        if (!file.isAbsolute() && file.getParent() == null && path != null) {
+            for (String dir : path.split(File.pathSeparator)) {
+                File f = new File(dir, compiler);
+                if (f.isFile() || (f = new File(dir, compiler + ".exe")).isFile()) {
+                    file = f;
+                    break;
+                }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Returns the leading lines of a generated source file that contain only preprocessor
+     * directives, such as the includes of jni.h, of platform headers, and of library headers.
+     */
+    static String getPreamble(File source) throws IOException {
+        StringBuilder preamble = new StringBuilder();
+        int depth = 0;
+        for (String line : Files.readAllLines(source.toPath(), StandardCharsets.UTF_8)) {
+            String s = line.trim();
+            if (s.startsWith("#if")) {
+                depth++;
+            } else if (s.startsWith("#endif")) {
+                depth--;
+            } else if (depth == 0 && s.length() > 0 && !s.startsWith("#") && !s.startsWith("//")) {
+                break;
+            }
+            preamble.append(line).append('\n');
+        }
+        return preamble.toString();
+    }
+
+    /** Returns the absolute paths given to the -I, -iquote, and -isystem options, in that order of precedence. */
+    static List<File> getIncludePaths(List<String> options, File workingDirectory) {
+        List<File> paths = new ArrayList<File>();
+        for (String prefix : new String[] {"-iquote", "-I", "-isystem"}) {
+            for (int i = 0; i < options.size(); i++) {
+                String arg = options.get(i);
+                if (arg.equals(prefix) && i + 1 < options.size()) {
+                    paths.add(new File(resolve(options.get(++i), workingDirectory)));
+                } else if (arg.startsWith(prefix) && arg.length() > prefix.length() && (!prefix.equals("-I") || !arg.startsWith("-I-"))) {
+                    paths.add(new File(resolve(arg.substring(prefix.length()), workingDirectory)));
+                }
+            }
+        }
+        return paths;
+    }
+
+    /** Returns true if the header starts with "#pragma once" or with an include guard, as recognized by GCC and Clang. */
+    static boolean isGuarded(File header) throws IOException {
+        String guard = null;
+        boolean comment = false;
+        for (String line : Files.readAllLines(header.toPath(), StandardCharsets.ISO_8859_1)) {
+            String s = line.trim();
+            if (comment || s.startsWith("/*")) {
+                comment = !s.contains("*/");
+                continue;
+            } else if (s.length() == 0 || s.startsWith("//")) {
+                continue;
+            }
+            s = s.replaceAll("^#\\s*", "#").replaceAll("\\s+", " ");
+            if (guard == null) {
+                if (s.equals("#pragma once")) {
+                    return true;
+                } else if (s.startsWith("#ifndef ")) {
+                    guard = s.substring(8).trim();
+                } else if (s.startsWith("#if !defined")) {
+                    guard = s.substring(12).replaceAll("[()\\s]", "");
+                } else {
+                    return false;
+                }
+            } else {
+                return s.startsWith("#define ") && s.substring(8).trim().split(" ")[0].equals(guard);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the leading lines of the preamble that can safely be processed twice, first in a precompiled header, then again
+     * by the source file itself: macro definitions, conditional blocks containing only such lines, and inclusions of headers
+     * that have include guards. Headers included with angle brackets that are not found in the include paths are assumed
+     * to be system headers, which all have guards. Anything else, such as declarations, ends the guarded preamble.
+     */
+    static String getGuardedPreamble(String preamble, File sourceDirectory, List<File> includePaths) throws IOException {
+        StringBuilder guarded = new StringBuilder();
+        StringBuilder block = new StringBuilder();
+        int depth = 0;
+        for (String line : preamble.split("\n", -1)) {
+            String s = line.trim().replaceAll("^#\\s*", "#");
+            boolean safe;
+            if (s.length() == 0 || s.startsWith("//")) {
+                safe = true;
+            } else if (s.startsWith("#if")) {
+                depth++;
+                safe = true;
+            } else if (s.startsWith("#endif")) {
+                depth--;
+                safe = true;
+            } else if (s.startsWith("#el") || s.startsWith("#define") || s.startsWith("#undef")) {
+                safe = true;
+            } else if (s.startsWith("#include")) {
+                String name = s.substring(8).trim();
+                safe = false;
+                if (name.length() > 2 && (name.charAt(0) == '<' || name.charAt(0) == '"')) {
+                    boolean system = name.charAt(0) == '<';
+                    name = name.substring(1, name.indexOf(system ? '>' : '"', 1));
+                    List<File> paths = new ArrayList<File>(includePaths);
+                    if (!system) {
+                        paths.add(0, sourceDirectory);
+                    }
+                    File header = null;
+                    for (File path : paths) {
+                        if (path != null && new File(path, name).isFile()) {
+                            header = new File(path, name);
+                            break;
+                        }
+                    }
+                    safe = header != null ? isGuarded(header) : system;
+                }
+            } else {
+                safe = false;
+            }
+            if (!safe) {
+                break;
+            }
+            block.append(line).append('\n');
+            if (depth == 0) {
+                // only whole conditional blocks
+                guarded.append(block);
+                block.setLength(0);
+            }
+        }
+        return guarded.toString().trim().length() > 0 ? guarded.toString() : "";
+    }
+
+    /** Returns the dependencies listed in a depfile in the format of make, as output by the -MD option. */
+    static List<String> readDependencies(File depfile) throws IOException {
+        List<String> dependencies = new ArrayList<String>();
+        for (List<String> list : readDependencyMap(depfile).values()) {
+            for (String path : list) {
+                if (!dependencies.contains(path)) {
+                    dependencies.add(path);
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    /** Returns the dependencies of each target listed in a depfile in the format of make. */
+    static Map<String, List<String>> readDependencyMap(File depfile) throws IOException {
+        String s = new String(Files.readAllBytes(depfile.toPath()), StandardCharsets.UTF_8).replace("\\\r\n", " ").replace("\\\n", " ");
+        Map<String, List<String>> map = new TreeMap<String, List<String>>();
+        for (String line : s.split("\r?\n")) {
+            int i = line.indexOf(": ");
+            if (i < 0 && line.endsWith(":")) {
+                i = line.length() - 1;
+            }
+            String target = i < 0 ? "" : unescape(line.substring(0, i).trim());
+            List<String> dependencies = map.get(target);
+            if (dependencies == null) {
+                map.put(target, dependencies = new ArrayList<String>());
+            }
+            StringBuilder path = new StringBuilder();
+            for (i = i + 1; i <= line.length(); i++) {
+                char c = i < line.length() ? line.charAt(i) : ' ';
+                if (c == '\\' && i + 1 < line.length() && (line.charAt(i + 1) == ' ' || line.charAt(i + 1) == '#')) {
+                    path.append(line.charAt(++i));
+                } else if (c == '$' && i + 1 < line.length() && line.charAt(i + 1) == '$') {
+                    path.append(line.charAt(++i));
+                } else if (Character.isWhitespace(c)) {
+                    if (path.length() > 0 && !dependencies.contains(path.toString())) {
+                        dependencies.add(path.toString());
+                    }
+                    path.setLength(0);
+                } else {
+                    path.append(c);
+                }
+            }
+        }
+        map.remove("");
+        return map;
+    }
+
+    /** Writes the dependencies of each target to a depfile in the format of make. */
+    static void writeDependencyMap(File depfile, Map<String, List<String>> map) throws IOException {
+        StringBuilder s = new StringBuilder();
+        for (Map.Entry<String, List<String>> e : map.entrySet()) {
+            s.append(escape(e.getKey())).append(':');
+            for (String path : e.getValue()) {
+                s.append(" \\\n ").append(escape(path));
+            }
+            s.append('\n');
+        }
+        depfile.getAbsoluteFile().getParentFile().mkdirs();
+        Files.write(depfile.toPath(), s.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String escape(String path) {
+        return path.replace("$", "$$").replace(" ", "\\ ").replace("#", "\\#");
+    }
+
+    static String unescape(String path) {
+        return path.replace("$$", "$").replace("\\ ", " ").replace("\\#", "#");
+    }
+
+    /** Returns the absolute path of the output file of the command. */
+    static String getOutput(List<String> command, File workingDirectory) {
+        int i = command.indexOf("-o");
+        return resolve(i >= 0 && i + 1 < command.size() ? command.get(i + 1) : "a.out", workingDirectory);
+    }
+
+    /**
+     * Returns the absolute paths of the libraries and object files linked by the command: the ones given as arguments, and for each
+     * -l option, the first file found in the -L paths, as the linker would, but not the ones it finds only in system directories.
+     */
+    static List<String> getLibraries(List<String> command, File workingDirectory) {
+        List<File> linkPaths = new ArrayList<File>();
+        for (int i = 1; i < command.size(); i++) {
+            String arg = command.get(i);
+            if (arg.equals("-L") && i + 1 < command.size()) {
+                linkPaths.add(new File(resolve(command.get(++i), workingDirectory)));
+            } else if (arg.startsWith("-L") && arg.length() > 2) {
+                linkPaths.add(new File(resolve(arg.substring(2), workingDirectory)));
+            }
+        }
+        List<String> libraries = new ArrayList<String>();
+        for (int i = 1; i < command.size(); i++) {
+            String arg = command.get(i);
+            File library = null;
+            if (arg.equals("-o") || arg.equals("-L") || arg.equals("-framework") || arg.equals("-install_name")) {
+                i++;
+            } else if (arg.startsWith("-l")) {
+                String name = arg.length() > 2 ? arg.substring(2) : i + 1 < command.size() ? command.get(++i) : "";
+                // shared libraries take precedence over static ones, as with the default options of linkers
+                String[] filenames = name.startsWith(":") ? new String[] {name.substring(1)}
+                        : new String[] {"lib" + name + ".dylib", "lib" + name + ".so", "lib" + name + ".a", name + ".lib"};
+                for (File path : linkPaths) {
+                    for (String filename : filenames) {
+                        if (library == null && new File(path, filename).isFile()) {
+                            library = new File(path, filename);
+                        }
+                    }
+                }
+            } else if (!arg.startsWith("-") && arg.matches(".*\\.(a|o|so|dylib|lib|obj)(\\.[0-9.]+)?")) {
+                library = new File(resolve(arg, workingDirectory));
+            }
+            if (library != null && library.isFile() && !libraries.contains(library.getAbsolutePath())) {
+                libraries.add(library.getAbsolutePath());
+            }
+        }
+        return libraries;
+    }
+
+    /**
+     * Replaces in {@link #dependencyFile} the dependencies of the output of the command with the ones found in the
+     * given depfile, except for the sources and precompiled headers themselves, followed by the libraries it links.
+     */
+    void updateDependencies(List<String> command, File workingDirectory, File depfile) throws IOException {
+        List<String> sources = new ArrayList<String>();
+        for (String path : getSources(command)) {
+            sources.add(resolve(path, workingDirectory));
+        }
+        String pchPrefix = precompiledHeaderDirectory != null ? precompiledHeaderDirectory.getAbsolutePath() + File.separator : null;
+        List<String> paths = readDependencies(depfile);
+        for (int i = 1; i < command.size() - 1; i++) {
+            if (command.get(i).equals("-include")) {
+                // the compiler lists neither forced includes nor the headers found in a precompiled header
+                paths.add(command.get(i + 1));
+            }
+        }
+        List<String> dependencies = new ArrayList<String>();
+        List<String> pchHeaders = new ArrayList<String>();
+        for (int i = 0; i < paths.size(); i++) {
+            String path = resolve(paths.get(i), workingDirectory);
+            if (pchPrefix != null && path.startsWith(pchPrefix)) {
+                File pchDepfile = new File(path + ".d");
+                if (path.endsWith(".h") && pchDepfile.isFile() && !pchHeaders.contains(path)) {
+                    pchHeaders.add(path);
+                    paths.addAll(readDependencies(pchDepfile));
+                }
+            } else if (!sources.contains(path) && !dependencies.contains(path)) {
+                dependencies.add(path);
+            }
+        }
+        for (String path : getLibraries(command, workingDirectory)) {
+            if (!dependencies.contains(path)) {
+                dependencies.add(path);
+            }
+        }
+        Map<String, List<String>> map = dependencyFile.isFile() ? readDependencyMap(dependencyFile) : new TreeMap<String, List<String>>();
+        map.put(getOutput(command, workingDirectory), dependencies);
+        writeDependencyMap(dependencyFile, map);
+    }
+
+    /** Returns the absolute path of the given path relative to the working directory. */
+    static String resolve(String path, File workingDirectory) {
+        File file = new File(path);
+        if (!file.isAbsolute() && workingDirectory != null) {
+            file = new File(workingDirectory, path);
+        }
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Builds, unless it is already up to date, a precompiled header with the guarded preamble of the
+     * generated JNI code and the options of the command, and returns the command modified to use it.
+     * There is one precompiled header per hash of options and preamble, so all the translation
+     * units compiled for the same platform with the same options end up sharing the same one.
+     */
+    List<String> precompileHeader(List<String> command, File workingDirectory,
+            Map<String, String> environmentVariables) throws IOException, InterruptedException {
+        List<String> sources = getSources(command);
+        String source = sources.get(0);
+        for (String s : sources) {
+            if (!new File(s).getName().startsWith("jnijavacpp.")) {
+                source = s;
+            }
+        }
+        File sourceFile = new File(resolve(source, workingDirectory));
+        if (!sourceFile.isFile()) {
+            return command;
+        }
+
+        String compiler = command.get(0);
+        boolean clang = new File(compiler).getName().contains("clang");
+        List<String> options = getCompilerOptions(command);
+        // the source file processes the preamble again after the forced include, which must not define anything twice
+        String preamble = getGuardedPreamble(getPreamble(sourceFile), sourceFile.getParentFile(), getIncludePaths(options, workingDirectory));
+        if (!preamble.contains("#include")) {
+            return command;
+        }
+        String hash;
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update((compiler + "\n" + options + "\n" + preamble).getBytes(StandardCharsets.UTF_8));
+            hash = String.format("%064x", new BigInteger(1, md.digest())).substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        File directory = new File(precompiledHeaderDirectory, hash).getAbsoluteFile();
+        File header = new File(directory, "jnijavacpp_pch.h");
+        File output = new File(directory, header.getName() + (clang ? ".pch" : ".gch"));
+        File depfile = new File(directory, header.getName() + ".d");
+        boolean upToDate = output.isFile() && depfile.isFile();
+        if (upToDate) {
+            for (String path : readDependencies(depfile)) {
+                File f = new File(resolve(path, workingDirectory));
+                if (!f.exists() || f.lastModified() > output.lastModified()) {
+                    upToDate = false;
+                    break;
+                }
+            }
+        }
+
+        if (!upToDate) {
+            directory.mkdirs();
+            Files.write(header.toPath(), preamble.getBytes(StandardCharsets.UTF_8));
+            File temp = File.createTempFile(output.getName(), ".tmp", directory);
+            List<String> pchCommand = new ArrayList<String>();
+            pchCommand.add(compiler);
+            pchCommand.addAll(options);
+            pchCommand.addAll(Arrays.asList("-x", "c++-header", header.getPath(), "-o", temp.getPath(), "-MD", "-MF", depfile.getPath()));
+            int exitValue = execute(pchCommand, workingDirectory, environmentVariables);
+            if (exitValue != 0) {
+                temp.delete();
+                logger.warn("Could not precompile header " + header + ", compiling without it");
+                return command;
+            }
+            // other tasks may be using the same header concurrently, so replace it atomically
+            Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            logger.info("Using precompiled header " + output);
+        }
+
+        List<String> newCommand = new ArrayList<String>();
+        newCommand.add(compiler);
+        newCommand.add("-include");
+        newCommand.add(header.getPath());
+        if (!clang) {
+            newCommand.add("-Winvalid-pch");
+        }
+        newCommand.addAll(command.subList(1, command.size()));
+        return newCommand;
+    }
+
+    /**
+     * Compiles, unless it is already available, the jnijavacpp.cpp source of the command into an object file
+     * named after a hash of its content, of the compiler, and of the options that affect it, and returns the
+     * command modified to link with that object file. Since the source is the same for all presets built with
+     * the same version of JavaCPP for a given platform, it usually gets compiled only once for all projects.
+     */
+    List<String> compileRuntime(List<String> command, File workingDirectory,
+            Map<String, String> environmentVariables) throws IOException, InterruptedException {
+        String source = null;
+        for (String s : getSources(command)) {
+            if (new File(s).getName().startsWith("jnijavacpp.")) {
+                source = s;
+            }
+        }
+        File sourceFile = source != null ? new File(resolve(source, workingDirectory)) : null;
+        if (sourceFile == null || !sourceFile.isFile()) {
+            return command;
+        }
+
+        String compiler = command.get(0);
+        List<String> options = getRuntimeOptions(command);
+        String hash;
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update((getCompilerVersion(compiler, environmentVariables) + "\n" + options + "\n").getBytes(StandardCharsets.UTF_8));
+            md.update(Files.readAllBytes(sourceFile.toPath()));
+            hash = String.format("%064x", new BigInteger(1, md.digest())).substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        File directory = new File(runtimeDirectory, hash).getAbsoluteFile();
+        File output = new File(directory, "jnijavacpp.o");
+        if (!output.isFile()) {
+            directory.mkdirs();
+            File temp = File.createTempFile(output.getName(), ".tmp", directory);
+            List<String> runtimeCommand = new ArrayList<String>();
+            runtimeCommand.add(compiler);
+            runtimeCommand.addAll(options);
+            runtimeCommand.addAll(Arrays.asList("-c", sourceFile.getPath(), "-o", temp.getPath()));
+            int exitValue = execute(runtimeCommand, workingDirectory, environmentVariables);
+            if (exitValue != 0) {
+                temp.delete();
+                logger.warn("Could not compile " + sourceFile + " separately, compiling it with the rest");
+                return command;
+            }
+            // other tasks may be compiling the same source concurrently, so replace it atomically
+            Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            logger.info("Using compiled runtime " + output);
+        }
+
+        List<String> newCommand = new ArrayList<String>(command);
+        newCommand.set(newCommand.indexOf(source), output.getPath());
+        return newCommand;
+    }
+
+    int execute(List<String> command, File workingDirectory,
+            Map<String, String> environmentVariables) throws IOException, InterruptedException {
+        if (governor == null) {
+            return run(command, workingDirectory, environmentVariables);
+        }
+        int acquired = governor.acquire(permits);
+        try {
+            return run(command, workingDirectory, environmentVariables);
+        } finally {
+            governor.release(acquired);
+        }
+    }
+
+    int run(List<String> command, File workingDirectory,
+            Map<String, String> environmentVariables) throws IOException, InterruptedException {
+        if (forked) {
+            return super.executeCommand(command, workingDirectory, environmentVariables);
+        }
         PathToFileResolver resolver = new PathToFileResolver() {
             @Override public File resolve(Object path) { return (File)path; }
             @Override public PathToFileResolver newResolver(File baseDir) { return this; }
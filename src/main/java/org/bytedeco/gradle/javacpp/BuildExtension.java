@@ -25,24 +25,41 @@ import groovy.util.Node;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import org.bytedeco.javacpp.Loader;
 import org.gradle.api.Action;
+import org.gradle.api.GradleException;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
 import org.gradle.api.XmlProvider;
+import org.gradle.api.artifacts.ConfigurablePublishArtifact;
 import org.gradle.api.artifacts.Configuration;
-import org.gradle.api.artifacts.ResolvedArtifact;
-import org.gradle.api.artifacts.ResolvedDependency;
-import org.gradle.api.internal.project.DefaultProject;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.DependencyArtifact;
+import org.gradle.api.artifacts.ModuleDependency;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.attributes.AttributeContainer;
+import org.gradle.api.component.AdhocComponentWithVariants;
+import org.gradle.api.component.ConfigurationVariantDetails;
 import org.gradle.api.internal.tasks.DefaultTaskDependencyFactory;
 import org.gradle.api.internal.tasks.TaskDependencyFactory;
 import org.gradle.api.plugins.BasePluginConvention;
+import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.publish.maven.MavenArtifact;
 import org.gradle.api.publish.maven.MavenPom;
 import org.gradle.api.publish.maven.internal.artifact.FileBasedMavenArtifact;
+import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.nativeplatform.MachineArchitecture;
+import org.gradle.nativeplatform.OperatingSystemFamily;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +76,9 @@ public class BuildExtension {
     BuildPlugin plugin;
     Project project;
 
+    /** The resolutions of configurations, which Gradle allows only once per configuration anyway. */
+    final Map<Configuration, PlatformResolution> resolutions = new HashMap<Configuration, PlatformResolution>();
+
     static {
         boolean legacyCheck;
         Constructor<FileBasedMavenArtifact> compatibleConstructor;
@@ -98,41 +118,291 @@ public class BuildExtension {
      */
     public List<MavenArtifact> existingArtifacts(Configuration configuration) throws IOException {
         ArrayList<MavenArtifact> artifacts = new ArrayList<MavenArtifact>();
-        BasePluginConvention bc = project.getConvention().getPlugin(BasePluginConvention.class);
-        File libsDir = new File(project.getBuildDir(), bc.getLibsDirName());
-        libsDir.mkdirs();
         try {
-            // Temporarily rename our project to prevent Gradle from resolving the artifacts to project dependencies without files.
-            Field nameField = DefaultProject.class.getDeclaredField("name");
-            nameField.setAccessible(true);
-            String name = (String)nameField.get(project);
-            nameField.set(project, name + "-renamed");
-            for (ResolvedDependency rd : configuration.getResolvedConfiguration().getLenientConfiguration().getFirstLevelModuleDependencies()) {
-                if (rd.getModuleGroup().equals(project.getGroup()) && rd.getModuleName().equals(name)) {
-                    for (ResolvedArtifact ra : rd.getModuleArtifacts()) {
-                        if (ra.getClassifier() != null && !ra.getClassifier().equals(plugin.getPlatform() + plugin.getPlatformExtension())) {
-                            try {
-                                File in = ra.getFile();
-                                File out = new File(libsDir, in.getName());
-                                Files.copy(in.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                                MavenArtifact ma = isLegacy ? compatibleArtifactConstructor.newInstance(out) :
-                                        compatibleArtifactConstructor.newInstance(out, DefaultTaskDependencyFactory.withNoAssociatedProject());
-                                ma.setClassifier(ra.getClassifier());
-                                artifacts.add(ma);
-                            } catch (RuntimeException e) {
-                                // probably ArtifactNotFoundException -> ignore
-                            }
+            for (PlatformResolution.Module m : resolve(configuration).getModules()) {
+                if (m.getGroup().equals(project.getGroup()) && m.getName().equals(project.getName())) {
+                    for (PlatformResolution.Artifact a : m.getArtifacts()) {
+                        if (a.getClassifier() != null && a.getFile() != null && !a.getClassifier().equals(plugin.getPlatform() + plugin.getPlatformExtension())) {
+                            File out = copyExistingArtifact(a.getFile());
+                            MavenArtifact ma = isLegacy ? compatibleArtifactConstructor.newInstance(out) :
+                                    compatibleArtifactConstructor.newInstance(out, DefaultTaskDependencyFactory.withNoAssociatedProject());
+                            ma.setClassifier(a.getClassifier());
+                            artifacts.add(ma);
                         }
                     }
                 }
             }
-            nameField.set(project, name);
         } catch (ReflectiveOperationException e) {
             logger.warn("Could not get artifacts: " + e);
         }
         return artifacts;
     }
 
+    /** Copies an existing artifact into the build libs directory of the project, where signatures can get written next to it. */
+    File copyExistingArtifact(File in) throws IOException {
+        BasePluginConvention bc = project.getConvention().getPlugin(BasePluginConvention.class);
+        File libsDir = new File(project.getBuildDir(), bc.getLibsDirName());
+        libsDir.mkdirs();
+        File out = new File(libsDir, in.getName());
+        copyUnchanged(in, out);
+        return out;
+    }
+
+    /**
+     * Copies a file byte for byte, since artifacts already published must keep their checksums,
+     * leaving the output file untouched when it is already identical.
+     */
+    static void copyUnchanged(File in, File out) throws IOException {
+        if (!out.isFile() || out.length() != in.length()
+                || !Arrays.equals(Files.readAllBytes(in.toPath()), Files.readAllBytes(out.toPath()))) {
+            Files.copy(in.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Returns the classifiers of the artifacts of the module of the project declared in the configuration, without resolving it. */
+    static List<String> getDeclaredClassifiers(Project project, Configuration configuration) {
+        List<String> classifiers = new ArrayList<String>();
+        for (Dependency d : configuration.getAllDependencies()) {
+            if (d instanceof ModuleDependency && d.getName().equals(project.getName()) && String.valueOf(project.getGroup()).equals(d.getGroup())) {
+                for (DependencyArtifact da : ((ModuleDependency)d).getArtifacts()) {
+                    if (da.getClassifier() != null && !classifiers.contains(da.getClassifier())) {
+                        classifiers.add(da.getClassifier());
+                    }
+                }
+            }
+        }
+        return classifiers;
+    }
+
+    /**
+     * Returns the model of the dependencies of the configuration, resolving it only the first time,
+     * so that {@link #existingArtifacts(Configuration)}, {@link #platformVariants(Configuration)},
+     * and {@link #xmlAction(Configuration)} can all share the same resolution.
+     */
+    public PlatformResolution resolve(Configuration configuration) {
+        synchronized (resolutions) {
+            PlatformResolution resolution = resolutions.get(configuration);
+            if (resolution == null) {
+                resolutions.put(configuration, resolution = PlatformResolution.resolve(project, configuration));
+            }
+            return resolution;
+        }
+    }
+
+    /** Returns the value of {@link OperatingSystemFamily#OPERATING_SYSTEM_ATTRIBUTE} for a platform like "linux-x86_64". */
+    static String getOperatingSystem(String platform) {
+        String os = platform.split("-")[0];
+        return os.equals("macosx") ? "macos" : os;
+    }
+
+    /** Returns the value of {@link MachineArchitecture#ARCHITECTURE_ATTRIBUTE} for a platform like "linux-x86_64". */
+    static String getArchitecture(String platform) {
+        String[] s = platform.split("-");
+        String arch = s.length > 1 ? s[1] : "";
+        return arch.equals("x86_64") ? "x86-64"
+             : arch.equals("arm64") ? "aarch64"
+             : arch.equals("armhf") ? "arm" : arch;
+    }
+
+    /**
+     * Opts in to build as well native libraries with JNI code only for the classes used by the given compiled classes
+     * of consumers, as found by a "javacppUsage" task, a {@link UsageTask} that writes their names to "javacpp/usage.txt"
+     * in the build directory. The tasks registered by {@link BuildPlugin#registerVariant(String, Action)},
+     * "javacppBuildCompilerPruned" and "javacppJarPruned", build them from their own copy of the classes with all
+     * the options of "javacppBuildCompiler", and archive them with a "-pruned" suffix, while "javacppBuildCompiler"
+     * keeps building all classes for the artifacts that get published. When consumers use no classes of the preset,
+     * "javacppBuildCompilerPruned" builds nothing and warns about it.
+     *
+     * @param consumerClasses directories and JAR files, as accepted by {@link Project#files(Object...)}, such as
+     *                        {@code project(':app').sourceSets.main.output}, but not depending on "javacppBuildCompiler"
+     */
+    public void pruneUnusedClasses(final Object... consumerClasses) {
+        final File outputFile = new File(project.getBuildDir(), "javacpp/usage.txt");
+        project.getTasks().register("javacppUsage", UsageTask.class, new Action<UsageTask>() { public void execute(UsageTask task) {
+            BuildTask compiler = project.getTasks().named("javacppBuildCompiler", BuildTask.class).get();
+            task.classes = project.files(consumerClasses);
+            task.presetClasses = project.files((Object[])compiler.getClassPath());
+            task.classOrPackageNames = compiler.getClassOrPackageNames();
+            task.outputFile = outputFile;
+            task.dependsOn("compileJava");
+        }});
+        plugin.registerVariant("pruned", new Action<BuildTask>() { public void execute(BuildTask task) {
+            task.classListFile = outputFile;
+            task.dependsOn("javacppUsage");
+        }});
+    }
+
+    /** Returns {@code benchmarks(new HashMap<String, String>())}, to measure only how long the classes take to load. */
+    public void benchmarks() {
+        benchmarks(new HashMap<String, String>());
+    }
+    /**
+     * Generates JMH benchmarks for the classes of "javacppBuildCompiler" with a "javacppBenchmarkSources" task,
+     * a {@link BenchmarkTask}, compiles them in a "javacppBenchmark" source set, with the version of JMH given by
+     * the "javacppJmhVersion" property, and adds a "javacppBenchmark" task running them against the libraries
+     * freshly built for the host platform, writing the results to "reports/javacpp/benchmark.json" in the build
+     * directory, to compare them between versions. Calling this again adds more methods to the same benchmarks.
+     *
+     * @param methods the fully qualified names of static native methods mapped to the Java expressions of their arguments,
+     *                such as {@code ['org.example.global.foo.bar': '1, 2']}, or to empty strings to pass zeros
+     */
+    public void benchmarks(final Map<String, String> methods) {
+        BenchmarkTask existing = (BenchmarkTask)project.getTasks().findByName("javacppBenchmarkSources");
+        if (existing != null) {
+            existing.methods.putAll(methods);
+            return;
+        }
+        String jmhVersion = project.hasProperty("javacppJmhVersion") ? String.valueOf(project.property("javacppJmhVersion")) : "1.37";
+        final File outputDirectory = new File(project.getBuildDir(), "javacpp/benchmarks");
+        final File resultFile = new File(project.getBuildDir(), "reports/javacpp/benchmark.json");
+        final TaskProvider<BenchmarkTask> sources = project.getTasks().register("javacppBenchmarkSources",
+                BenchmarkTask.class, new Action<BenchmarkTask>() { public void execute(BenchmarkTask task) {
+            BuildTask compiler = project.getTasks().named("javacppBuildCompiler", BuildTask.class).get();
+            task.presetClasses = project.files((Object[])compiler.getClassPath());
+            task.classOrPackageNames = compiler.getClassOrPackageNames();
+            task.methods.putAll(methods);
+            task.outputDirectory = outputDirectory;
+            task.dependsOn("compileJava");
+        }});
+        // realize it now to let later calls find it
+        sources.get();
+
+        JavaPluginConvention jc = project.getConvention().getPlugin(JavaPluginConvention.class);
+        SourceSet main = jc.getSourceSets().getByName("main");
+        final SourceSet benchmark = jc.getSourceSets().create("javacppBenchmark");
+        benchmark.getJava().srcDir(project.files(outputDirectory).builtBy(sources));
+        benchmark.setCompileClasspath(benchmark.getCompileClasspath().plus(main.getOutput()).plus(main.getCompileClasspath()));
+        benchmark.setRuntimeClasspath(benchmark.getRuntimeClasspath().plus(main.getOutput()).plus(main.getRuntimeClasspath()));
+        project.getDependencies().add(benchmark.getImplementationConfigurationName(), "org.openjdk.jmh:jmh-core:" + jmhVersion);
+        project.getDependencies().add(benchmark.getAnnotationProcessorConfigurationName(), "org.openjdk.jmh:jmh-generator-annprocess:" + jmhVersion);
+
+        project.getTasks().register("javacppBenchmark", JavaExec.class, new Action<JavaExec>() { public void execute(JavaExec task) {
+            task.setClasspath(benchmark.getRuntimeClasspath());
+            task.getMainClass().set("org.openjdk.jmh.Main");
+            task.args("-rf", "json", "-rff", resultFile.getAbsolutePath());
+            task.doFirst(new Action<Task>() { public void execute(Task t) {
+                // the libraries get built for the platform of javacppBuildCompiler, which needs to be the host one
+                if (!plugin.getPlatform().equals(Loader.getPlatform())) {
+                    throw new GradleException("Cannot run benchmarks for " + plugin.getPlatform() + " on " + Loader.getPlatform());
+                }
+                resultFile.getParentFile().mkdirs();
+            }});
+            task.dependsOn("javacppBuildCompiler", benchmark.getClassesTaskName());
+        }});
+    }
+
+    /**
+     * Opts in to build the native libraries as well with the compiler options of the given types, "debug" and "release",
+     * for each of which the tasks registered by {@link BuildPlugin#registerBuildVariant(String)}, such as
+     * "javacppBuildCompilerRelease" and "javacppJarRelease", build from their own copy of the classes with all
+     * the options of "javacppBuildCompiler", and archive the libraries with a "-debug" or "-release" suffix.
+     *
+     * @param buildTypes values for {@link BuildTask#buildType}
+     */
+    public void buildVariants(String... buildTypes) {
+        for (String buildType : buildTypes) {
+            if (!buildType.equals("debug") && !buildType.equals("release")) {
+                throw new GradleException("Unknown build type \"" + buildType + "\", which should be \"debug\" or \"release\"");
+            }
+            if (project.getTasks().findByName("javacppBuildCompiler" + Character.toUpperCase(buildType.charAt(0)) + buildType.substring(1)) == null) {
+                plugin.registerBuildVariant(buildType);
+            }
+        }
+    }
+
+    /** Returns {@code platformVariants(configuration, null)}. */
+    public void platformVariants(Configuration configuration) {
+        platformVariants(configuration, null);
+    }
+    /**
+     * Adds to the "java" component one variant per platform, for the JAR file being built as well as for
+     * the ones with the classifiers declared in the configuration, to be published in Gradle Module Metadata.
+     * Each variant contains the artifacts of the "runtimeElements" variant, that is the main JAR file, and the one
+     * with the classifier of its platform, and gets the attributes of "runtimeElements" along with
+     * {@link OperatingSystemFamily#OPERATING_SYSTEM_ATTRIBUTE} and {@link MachineArchitecture#ARCHITECTURE_ATTRIBUTE},
+     * letting Gradle select only the ones matching what consumers request, without any rule, while consumers that request
+     * nothing still get the main JAR file only. The configuration gets resolved, and the existing JAR files copied into
+     * the project's build libs directory, only once publishing needs them, so the publication should use only
+     * {@code from components.java}, without {@link #existingArtifacts(Configuration)}.
+     *
+     * @param configuration containing dependencies to use
+     * @param extension like "-gpl", "-gpu", "-python", etc (optional)
+     * @see <a href="https://docs.gradle.org/current/userguide/publishing_gradle_module_metadata.html">Understanding Gradle Module Metadata</a>
+     */
+    public void platformVariants(final Configuration configuration, String extension) {
+        final AdhocComponentWithVariants component = (AdhocComponentWithVariants)project.getComponents().getByName("java");
+        final Configuration runtimeElements = project.getConfigurations().getByName("runtimeElements");
+
+        List<String> classifiers = new ArrayList<String>();
+        List<Object> files = new ArrayList<Object>();
+        classifiers.add(plugin.getPlatform() + plugin.getPlatformExtension());
+        files.add(project.getTasks().named("javacppJar"));
+        for (final String classifier : getDeclaredClassifiers(project, configuration)) {
+            if (classifiers.contains(classifier)) {
+                continue;
+            }
+            classifiers.add(classifier);
+            files.add(project.provider(new Callable<File>() { public File call() throws IOException {
+                for (PlatformResolution.Module m : resolve(configuration).getModules()) {
+                    if (m.getGroup().equals(project.getGroup()) && m.getName().equals(project.getName())) {
+                        for (PlatformResolution.Artifact a : m.getArtifacts()) {
+                            if (classifier.equals(a.getClassifier()) && a.getFile() != null) {
+                                return copyExistingArtifact(a.getFile());
+                            }
+                        }
+                    }
+                }
+                throw new GradleException("Could not resolve the artifact of " + project.getName() + " with classifier " + classifier);
+            }}));
+        }
+
+        for (int i = 0; i < classifiers.size(); i++) {
+            final String classifier = classifiers.get(i);
+            String platform = classifier;
+            String platformExtension = "";
+            if (extension != null && platform.endsWith(extension)) {
+                platform = platform.substring(0, platform.length() - extension.length());
+                platformExtension = extension;
+            }
+            Configuration variant = project.getConfigurations().maybeCreate("javacppRuntimeElements-" + classifier);
+            variant.setCanBeConsumed(true);
+            variant.setCanBeResolved(false);
+            variant.extendsFrom(runtimeElements.getExtendsFrom().toArray(new Configuration[0]));
+            AttributeContainer attributes = variant.getAttributes();
+            for (Attribute<?> key : runtimeElements.getAttributes().keySet()) {
+                copy(key, runtimeElements.getAttributes(), attributes);
+            }
+            attributes.attribute(OperatingSystemFamily.OPERATING_SYSTEM_ATTRIBUTE,
+                    project.getObjects().named(OperatingSystemFamily.class, getOperatingSystem(platform)));
+            attributes.attribute(MachineArchitecture.ARCHITECTURE_ATTRIBUTE,
+                    project.getObjects().named(MachineArchitecture.class, getArchitecture(platform)));
+            if (platformExtension.length() > 0) {
+                attributes.attribute(Attribute.of("org.bytedeco.javacpp.platform.extension", String.class), platformExtension);
+            }
+            // the same artifacts as "runtimeElements", which the publication then contains only once
+            variant.getOutgoing().getArtifacts().addAll(runtimeElements.getOutgoing().getArtifacts());
+            project.getArtifacts().add(variant.getName(), files.get(i), new Action<ConfigurablePublishArtifact>() {
+                public void execute(ConfigurablePublishArtifact artifact) {
+                    artifact.setClassifier(classifier);
+                }
+            });
+            component.addVariantsFromConfiguration(variant, new Action<ConfigurationVariantDetails>() {
+                public void execute(ConfigurationVariantDetails details) {
+                    // same dependencies as "runtimeElements", which end up only once in the pom.xml file
+                    details.mapToMavenScope("runtime");
+                }
+            });
+        }
+    }
+
+    /** Copies the value of the attribute, if any, with its type. */
+    static <T> void copy(Attribute<T> key, AttributeContainer from, AttributeContainer to) {
+        T value = from.getAttribute(key);
+        if (value != null) {
+            to.attribute(key, value);
+        }
+    }
+
     /** Returns {@code xmlAction(configuration, null)}. */
     public Action<? extends XmlProvider> xmlAction(Configuration configuration) {
         return xmlAction(configuration, null);
@@ -164,20 +434,20 @@ public class BuildExtension {
             ArrayList<String> platforms = new ArrayList<String>();
             Node propertiesNode = xml.asNode().appendNode("properties");
             Node dependenciesNode = xml.asNode().appendNode("dependencies");
-            for (ResolvedDependency rd : configuration.getResolvedConfiguration().getLenientConfiguration().getFirstLevelModuleDependencies()) {
-                if (rd.getModuleGroup().equals(project.getGroup()) && rd.getModuleName().equals(project.getName())) {
+            for (PlatformResolution.Module m : resolve(configuration).getModules()) {
+                if (m.getGroup().equals(project.getGroup()) && m.getName().equals(project.getName())) {
                     Node dependencyNode = dependenciesNode.appendNode("dependency");
-                    dependencyNode.appendNode("groupId", rd.getModuleGroup());
-                    dependencyNode.appendNode("artifactId", rd.getModuleName());
-                    dependencyNode.appendNode("version", rd.getModuleVersion());
+                    dependencyNode.appendNode("groupId", m.getGroup());
+                    dependencyNode.appendNode("artifactId", m.getName());
+                    dependencyNode.appendNode("version", m.getVersion());
                 }
-                for (ResolvedArtifact ra : rd.getModuleArtifacts()) {
+                for (PlatformResolution.Artifact a : m.getArtifacts()) {
                     Node dependencyNode = dependenciesNode.appendNode("dependency");
-                    dependencyNode.appendNode("groupId", rd.getModuleGroup());
-                    dependencyNode.appendNode("artifactId", rd.getModuleName());
-                    dependencyNode.appendNode("version", rd.getModuleVersion());
-                    if (ra.getClassifier() != null) {
-                        String platform = ra.getClassifier();
+                    dependencyNode.appendNode("groupId", m.getGroup());
+                    dependencyNode.appendNode("artifactId", m.getName());
+                    dependencyNode.appendNode("version", m.getVersion());
+                    if (a.getClassifier() != null) {
+                        String platform = a.getClassifier();
                         if (extension != null && platform.endsWith(extension)) {
                             platform = platform.substring(0, platform.length() - extension.length());
                         }
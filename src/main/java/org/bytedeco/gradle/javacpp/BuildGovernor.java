@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.api.services.BuildServiceSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A build service shared by all instances of {@link BuildTask} that limits the number of native
+ * subprocesses running at the same time across all projects, for example with "--parallel".
+ * Compilers acquire a single permit, while build commands acquire as many permits as the number
+ * of jobs they get via the "MAKEJ" environment variable. By default, there is one permit per CPU,
+ * but no more than one per gigabyte of physical memory not reserved for the heap of Gradle,
+ * and this can be overridden with the "javacppJobs" project property.
+ *
+ * @author Samuel Audet
+ */
+public abstract class BuildGovernor implements BuildService<BuildGovernor.Parameters> {
+    private static final Logger logger = LoggerFactory.getLogger(BuildGovernor.class);
+
+    /** The amount of memory we expect a single compiler to use. */
+    static final long MEMORY_PER_PERMIT = 1L << 30;
+
+    public interface Parameters extends BuildServiceParameters {
+        Property<Integer> getPermits();
+    }
+
+    Semaphore semaphore = null;
+
+    /** Registers the service with Gradle, which must be version 6.1 or newer. */
+    static Provider<BuildGovernor> register(Project project) {
+        Object jobs = project.findProperty("javacppJobs");
+        final int permits = jobs != null ? Integer.parseInt(jobs.toString()) : getDefaultPermits();
+        return project.getGradle().getSharedServices().registerIfAbsent("javacppBuildGovernor", BuildGovernor.class,
+                new Action<BuildServiceSpec<Parameters>>() { public void execute(BuildServiceSpec<Parameters> spec) {
+            spec.getParameters().getPermits().set(permits);
+        }});
+    }
+
+    /** Returns the number of CPUs, limited by the amount of physical memory available to subprocesses. */
+    static int getDefaultPermits() {
+        int permits = Runtime.getRuntime().availableProcessors();
+        try {
+            OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+            Method method = Class.forName("com.sun.management.OperatingSystemMXBean").getMethod("getTotalPhysicalMemorySize");
+            long memory = (Long)method.invoke(bean) - Runtime.getRuntime().maxMemory();
+            permits = (int)Math.min(permits, memory / MEMORY_PER_PERMIT);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Could not get total physical memory size: " + e);
+        }
+        return Math.max(1, permits);
+    }
+
+    /** Returns the total number of permits. */
+    public int getPermits() {
+        Parameters parameters = getParameters();
+        return Math.max(1, parameters != null && parameters.getPermits().isPresent() ? parameters.getPermits().get() : getDefaultPermits());
+    }
+
+    synchronized Semaphore getSemaphore() {
+        if (semaphore == null) {
+            // make it fair so that build commands acquiring many permits do not starve
+            semaphore = new Semaphore(getPermits(), true);
+        }
+        return semaphore;
+    }
+
+    /** Blocks until the given number of permits, limited to the total, become available, and returns that number. */
+    public int acquire(int permits) throws InterruptedException {
+        permits = Math.max(1, Math.min(permits, getPermits()));
+        if (!getSemaphore().tryAcquire(permits, 0, TimeUnit.SECONDS)) {
+            logger.info("Waiting for " + permits + " of " + getPermits() + " permits to run native subprocess");
+            getSemaphore().acquire(permits);
+        }
+        return permits;
+    }
+
+    /** Returns permits previously obtained with {@link #acquire(int)}. */
+    public void release(int permits) {
+        getSemaphore().release(permits);
+    }
+}
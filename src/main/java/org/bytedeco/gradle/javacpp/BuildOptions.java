@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import org.bytedeco.javacpp.tools.Builder;
+import org.bytedeco.javacpp.tools.Logger;
+
+/**
+ * A snapshot of the options of {@link BuildTask} passed to {@link Builder}, which can be sent to worker processes.
+ *
+ * @author Samuel Audet
+ */
+class BuildOptions implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    String[] classPath, includePath, includeResource, buildPath, buildResource, linkPath, linkResource,
+             preloadPath, preloadResource, resourcePath, executablePath;
+    String encoding, outputName, jarPrefix, properties;
+    File outputDirectory, configDirectory, propertyFile, workingDirectory;
+    boolean clean, generate, compile, deleteJniFiles, header, copyLibs, copyResources;
+    Properties propertyKeysAndValues;
+    String[] classOrPackageNames, buildCommand, compilerOptions;
+    HashMap<String, String> environmentVariables;
+    File precompiledHeaderDirectory, runtimeDirectory, dependencyFile;
+    String buildType;
+    boolean linkTimeOptimization;
+
+    /** The number of permits to acquire from {@link BuildGovernor} for each subprocess. */
+    int permits = 1;
+
+    /**
+     * Returns true if the files for copyLibs and copyResources get copied by {@link LibraryCopier} after the build,
+     * which is not possible when {@link Builder} also needs to archive them in a JAR file.
+     */
+    boolean isCopyingAfterBuild() {
+        return (copyLibs || copyResources) && jarPrefix == null && classPath != null;
+    }
+
+    /** Copies in parallel the files for copyLibs and copyResources that changed since the last build, if not already done by {@link Builder}. */
+    void copyFiles(Logger logger, Builder builder, File[] outputFiles) throws IOException, InterruptedException {
+        if (!isCopyingAfterBuild() || outputFiles == null) {
+            return;
+        }
+        URL[] urls = new URL[classPath.length];
+        for (int i = 0; i < classPath.length; i++) {
+            urls[i] = new File(classPath[i]).toURI().toURL();
+        }
+        // load again the classes of the builder, which does not expose them
+        URLClassLoader loader = new URLClassLoader(urls, LibraryCopier.class.getClassLoader());
+        try {
+            List<Class> classes = new ArrayList<Class>();
+            for (String name : BuildTask.findClassNames(classPath, classOrPackageNames)) {
+                classes.add(Class.forName(name, false, loader));
+            }
+            LibraryCopier copier = new LibraryCopier(logger, outputName);
+            copier.plan(builder.getProperties(), classes, outputFiles, copyLibs, copyResources);
+            int copied = copier.copy(Runtime.getRuntime().availableProcessors());
+            logger.info("Copied " + copied + " of " + copier.copies.size() + " files that changed");
+        } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            throw new IOException("Could not load classes to find the files to copy: " + e, e);
+        } finally {
+            loader.close();
+        }
+    }
+
+    /**
+     * Replaces the "platform.compiler.default" options with ones for a "debug" build, which compiles quickly, or
+     * for a "release" build, which produces smaller and faster libraries, with GCC and Clang, but not other compilers.
+     */
+    static void applyBuildType(Properties properties, String buildType, boolean linkTimeOptimization) {
+        String compiler = properties.getProperty("platform.compiler", "");
+        if (buildType == null || !(compiler.contains("gcc") || compiler.contains("g++") || compiler.contains("clang"))) {
+            return;
+        }
+        boolean debug = buildType.equals("debug");
+        String platform = properties.getProperty("platform", "");
+        List<String> options = new ArrayList<String>();
+        for (String s : properties.getProperty("platform.compiler.default", "").split(" ")) {
+            // keep the options for the target, such as -march and -m64, but not the ones for optimization and debugging
+            if (s.length() > 0 && !s.startsWith("-O") && !s.startsWith("-g") && !s.equals("-s")) {
+                options.add(s);
+            } else if (s.equals("-s") && !debug) {
+                options.add(s);
+            }
+        }
+        if (debug) {
+            options.addAll(Arrays.asList("-O0", "-g"));
+        } else if (buildType.equals("release")) {
+            options.addAll(Arrays.asList("-O3", "-fvisibility=hidden", "-fvisibility-inlines-hidden", "-ffunction-sections", "-fdata-sections",
+                    platform.startsWith("macosx") || platform.startsWith("ios") ? "-Wl,-dead_strip" : "-Wl,--gc-sections"));
+            if (linkTimeOptimization) {
+                options.add("-flto");
+            }
+        } else {
+            return;
+        }
+        StringBuilder value = new StringBuilder();
+        for (String s : options) {
+            value.append(value.length() > 0 ? " " : "").append(s);
+        }
+        properties.setProperty("platform.compiler.default", value.toString());
+    }
+
+    /** Returns a new executor for the subprocesses of {@link Builder}, without any governor. */
+    BuildExecutor createExecutor(Logger logger) {
+        BuildExecutor executor = new BuildExecutor(logger);
+        executor.precompiledHeaderDirectory = precompiledHeaderDirectory;
+        executor.runtimeDirectory = runtimeDirectory;
+        executor.dependencyFile = dependencyFile;
+        executor.permits = permits;
+        return executor;
+    }
+
+    /** Returns a new {@link Builder} configured with these options, loading properties from the cache when not null. */
+    Builder createBuilder(Logger logger, BuilderCache cache, BuildExecutor executor) throws IOException, ClassNotFoundException {
+        Builder builder = new Builder(logger);
+        if (cache != null) {
+            cache.loadProperties(builder, properties);
+        } else {
+            builder.properties(properties);
+        }
+        builder.classPaths(classPath)
+                .encoding(encoding)
+                .outputDirectory(outputDirectory)
+                .outputName(outputName)
+                .clean(clean)
+                .generate(generate)
+                .compile(compile)
+                .deleteJniFiles(deleteJniFiles)
+                .header(header)
+                .copyLibs(copyLibs && !isCopyingAfterBuild())
+                .copyResources(copyResources && !isCopyingAfterBuild())
+                .configDirectory(configDirectory)
+                .jarPrefix(jarPrefix)
+                .propertyFile(propertyFile)
+                .properties(propertyKeysAndValues)
+                .classesOrPackages(classOrPackageNames)
+                .buildCommand(buildCommand)
+                .workingDirectory(workingDirectory)
+                .environmentVariables(environmentVariables)
+                .compilerOptions(compilerOptions)
+                .commandExecutor(executor)
+
+                .addProperty("platform.buildpath", buildPath)
+                .addProperty("platform.buildresource", buildResource)
+                .addProperty("platform.includepath", includePath)
+                .addProperty("platform.includeresource", includeResource)
+                .addProperty("platform.linkpath", linkPath)
+                .addProperty("platform.linkresource", linkResource)
+                .addProperty("platform.preloadpath", preloadPath)
+                .addProperty("platform.preloadresource", preloadResource)
+                .addProperty("platform.resourcepath", resourcePath)
+                .addProperty("platform.executablepath", executablePath);
+        // after the properties of the user, which may change the compiler or its default options
+        applyBuildType(builder.getProperties(), buildType, linkTimeOptimization);
+        return builder;
+    }
+}
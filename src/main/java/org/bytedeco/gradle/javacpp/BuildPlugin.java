@@ -28,21 +28,28 @@ import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import org.bytedeco.javacpp.Loader;
 import org.gradle.api.Action;
 import org.gradle.api.Project;
 import org.gradle.api.Plugin;
 import org.gradle.api.Task;
+import org.gradle.api.file.ConfigurableFilePermissions;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.Copy;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.WriteProperties;
+import org.gradle.api.tasks.bundling.AbstractArchiveTask;
 import org.gradle.api.tasks.bundling.Jar;
 import org.gradle.api.tasks.compile.JavaCompile;
+import org.gradle.api.tasks.util.PatternSet;
+import org.gradle.util.GradleVersion;
 
 /**
  * This plugin creates new packages containing native libraries using JavaCPP.
@@ -62,13 +69,21 @@ import org.gradle.api.tasks.compile.JavaCompile;
  * <li>"javacppPlatform", to be used to specify dependencies for the "-platform" artifact,
  * </ul><p>
  *
+ * registers the following build services, with Gradle 6.1 or newer:
+ * <p><ul>
+ * <li>"javacppBuilderCache", a {@link BuilderCache} used by all instances of {@link BuildTask},
+ * <li>"javacppBuildGovernor", a {@link BuildGovernor} limiting the native subprocesses of all instances of {@link BuildTask},
+ * </ul><p>
+ *
  * and registers the following tasks:
  * <p><ul>
  * <li>"javacppBuildCommand" to execute {@link BuildTask#buildCommand},
- * <li>"javacppCompileJava" to compile classes needed by the parser,
+ * <li>"javacppCompileJava" to compile separately the classes needed by the parser, as matched by its {@link BuildTask#classOrPackageNames},
  * <li>"javacppBuildParser" to run the parser on these classes,
  * <li>"javacppBuildCompiler" to generate and compile JNI code,
  * <li>"javacppPomProperties" to write version information to pom.properties,
+ * <li>"javacppIndex" to write with {@link IndexTask} an index of native libraries with their sizes, hashes, and load order,
+ * <li>"javacppSizeReport" to report with {@link SizeTask} the sections and symbols taking space in native libraries,
  * <li>"javacppJar" to archive the native libraries in a separate JAR file,
  * <li>"javacppPlatformJar", to create an empty JAR file for the main "-platform" artifact,
  * <li>"javacppPlatformJavadocJar", to create an empty JAR file for the "-platform" javadoc artifact, and
@@ -88,11 +103,116 @@ public class BuildPlugin implements Plugin<Project> {
         return (String)project.findProperty("javacppPlatformExtension");
     }
 
+    File libraryPathFile = null;
+    long libraryPathTime = 0;
+    String libraryPath = null;
+
+    /** Returns the "platform.library.path" property written by "javacppBuildCompiler", reading its file again only when it changes. */
+    synchronized String getLibraryPath() {
+        Task task = project.getTasks().findByName("javacppBuildCompiler");
+        File file = task instanceof BuildTask ? ((BuildTask)task).getPropertiesFile() : null;
+        if (file == null || !file.isFile()) {
+            return null;
+        } else if (!file.equals(libraryPathFile) || file.lastModified() != libraryPathTime) {
+            try {
+                libraryPath = BuildTask.loadProperties(file).getProperty("platform.library.path");
+                libraryPathFile = file;
+                libraryPathTime = file.lastModified();
+            } catch (IOException e) {
+                project.getLogger().warn("Could not read " + file + ": " + e);
+                return null;
+            }
+        }
+        return libraryPath;
+    }
+
     boolean isLibraryPath(String path) {
-        String p = (String)project.findProperty("javacpp.platform.library.path");
+        String p = getLibraryPath();
         return p != null && p.length() > 0 ? path.startsWith(p) : path.contains("/" + getPlatform() + getPlatformExtension() + "/");
     }
 
+    /** Declares as input of the task the file of properties written by "javacppBuildCompiler", on which {@link #isLibraryPath(String)} depends. */
+    void dependsOnLibraryPath(Task task) {
+        task.getInputs().file(new Callable<File>() { public File call() {
+            return ((BuildTask)project.getTasks().getByName("javacppBuildCompiler")).getPropertiesFile();
+        }}).withPropertyName("javacppBuildCompilerProperties").optional();
+    }
+
+    /**
+     * Registers a variant, as per {@link #registerVariant(String, Action)}, built with
+     * the compiler options of the given {@link BuildTask#buildType}.
+     */
+    void registerBuildVariant(final String buildType) {
+        registerVariant(buildType, new Action<BuildTask>() { public void execute(BuildTask task) {
+            task.buildType = buildType;
+        }});
+    }
+
+    /**
+     * Registers "javacppCopyClasses&lt;Name&gt;", "javacppBuildCompiler&lt;Name&gt;", and "javacppJar&lt;Name&gt;" to do the same as
+     * "javacppBuildCompiler" and "javacppJar" from a copy of the classes in "javacpp/&lt;name&gt;" of the build directory,
+     * with all the options of "javacppBuildCompiler", then the ones set by the given action,
+     * and with a "-&lt;name&gt;" suffix added to the classifier.
+     */
+    void registerVariant(final String name, final Action<BuildTask> action) {
+        final String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        final File variantClassesDir = new File(project.getBuildDir(), "javacpp/" + name);
+        final SourceSet main = project.getConvention().getPlugin(JavaPluginConvention.class).getSourceSets().getByName("main");
+
+        project.getTasks().register("javacppCopyClasses" + suffix,
+                Copy.class, new Action<Copy>() { public void execute(Copy task) {
+            task.from(main.getOutput().getClassesDirs());
+            task.include("**/*.class");
+            task.into(variantClassesDir);
+        }});
+
+        project.getTasks().register("javacppBuildCompiler" + suffix,
+                BuildTask.class, new Action<BuildTask>() { public void execute(BuildTask task) {
+            BuildTask compiler = project.getTasks().named("javacppBuildCompiler", BuildTask.class).get();
+            task.copyOptions(compiler);
+            task.classPath = new String[] {variantClassesDir.getAbsolutePath()};
+            action.execute(task);
+            task.dependsOn(compiler.getDependsOn());
+            task.dependsOn("javacppCopyClasses" + suffix);
+        }});
+
+        project.getTasks().register("javacppJar" + suffix,
+                Jar.class, new Action<Jar>() { public void execute(Jar task) {
+            reproducible(task);
+            task.from(variantClassesDir);
+            dependsOnLibraryPath(task);
+            setProperty(
+                "setClassifier", // Deprecated in 7.0, removed in 8.0
+                "getArchiveClassifier", // Since 5.1
+                task,
+                getPlatform() + getPlatformExtension() + "-" + name);
+            task.include(new Spec<FileTreeElement>() { public boolean isSatisfiedBy(FileTreeElement file) {
+                return file.isDirectory() || isLibraryPath(file.getPath());
+            }});
+            task.dependsOn("javacppBuildCompiler" + suffix);
+        }});
+    }
+
+    /**
+     * Returns true if the Java source file at the given relative path contains one of the classes
+     * or packages (suffixed with .* or .**) listed, or if the list is null or empty.
+     */
+    static boolean isClassIncluded(String path, String[] classOrPackageNames) {
+        if (classOrPackageNames == null || classOrPackageNames.length == 0) {
+            return true;
+        }
+        String name = path.replace('\\', '/').replaceAll("\\.java$", "").replace('/', '.');
+        String pkg = name.lastIndexOf('.') >= 0 ? name.substring(0, name.lastIndexOf('.')) : "";
+        for (String s : classOrPackageNames) {
+            if (s.endsWith(".**") ? name.startsWith(s.substring(0, s.length() - 2))
+                    : s.endsWith(".*") ? pkg.equals(s.substring(0, s.length() - 2))
+                    : name.equals(s) || s.startsWith(name + "$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private <T> void setProperty(String originalMethod, String propertyField, Object target, T value) {
         Method method = findMethod(target.getClass(), originalMethod, value.getClass());
         if (method != null) {
@@ -147,6 +267,24 @@ public class BuildPlugin implements Plugin<Project> {
         }
     }
 
+    /**
+     * Makes the archive reproducible, with entries in a fixed order, constant timestamps,
+     * and the same permissions for all files and directories, regardless of the file system.
+     */
+    void reproducible(AbstractArchiveTask task) {
+        task.setPreserveFileTimestamps(false);
+        task.setReproducibleFileOrder(true);
+        Method method = findMethod(task.getClass(), "filePermissions", Action.class); // Since 8.3
+        if (method != null) {
+            invoke(method, task, new Action<ConfigurableFilePermissions>() { public void execute(ConfigurableFilePermissions p) { p.unix(0644); }});
+            invoke(findMethod(task.getClass(), "dirPermissions", Action.class), task,
+                    new Action<ConfigurableFilePermissions>() { public void execute(ConfigurableFilePermissions p) { p.unix(0755); }});
+        } else {
+            invoke(findMethod(task.getClass(), "setFileMode", Integer.class), task, 0644); // Deprecated in 8.3
+            invoke(findMethod(task.getClass(), "setDirMode", Integer.class), task, 0755);
+        }
+    }
+
     @Override public void apply(final Project project) {
         this.project = project;
         if (!project.hasProperty("javacppPlatform")) {
@@ -158,6 +296,16 @@ public class BuildPlugin implements Plugin<Project> {
         if (project.getExtensions().findByName("javacppBuild") == null) {
             project.getExtensions().create("javacppBuild", BuildExtension.class, this);
         }
+        if (GradleVersion.current().compareTo(GradleVersion.version("6.1")) >= 0) {
+            final Provider<BuilderCache> builderCache = BuilderCache.register(project);
+            final Provider<BuildGovernor> buildGovernor = BuildGovernor.register(project);
+            project.getTasks().withType(BuildTask.class).configureEach(new Action<BuildTask>() { public void execute(BuildTask task) {
+                task.builderCache = builderCache;
+                task.usesService(builderCache);
+                task.buildGovernor = buildGovernor;
+                task.usesService(buildGovernor);
+            }});
+        }
 
         project.getPlugins().withType(JavaPlugin.class, new Action<JavaPlugin>() { public void execute(JavaPlugin javaPlugin) {
             final JavaPluginConvention jc = project.getConvention().getPlugin(JavaPluginConvention.class);
@@ -173,6 +321,12 @@ public class BuildPlugin implements Plugin<Project> {
                 }
             }
 
+            // let the parser find first the classes compiled by javacppCompileJava
+            final File javacppClassesDir = new File(project.getBuildDir(), "javacpp/classes");
+            final String[] parserPaths = new String[paths.length + 1];
+            parserPaths[0] = javacppClassesDir.getAbsolutePath();
+            System.arraycopy(paths, 0, parserPaths, 1, paths.length);
+
             project.getTasks().register("javacppBuildCommand",
                     BuildTask.class, new Action<BuildTask>() { public void execute(BuildTask task) {
                 task.classPath = paths;
@@ -187,24 +341,29 @@ public class BuildPlugin implements Plugin<Project> {
 
             project.getTasks().register("javacppCompileJava",
                     JavaCompile.class, new Action<JavaCompile>() { public void execute(JavaCompile task) {
+                // compile only the classes matched by the parser, letting javac find the ones they need on the source path
                 task.setSource(main.getJava());
+                task.include(new Spec<FileTreeElement>() { public boolean isSatisfiedBy(FileTreeElement file) {
+                    BuildTask parser = (BuildTask)project.getTasks().getByName("javacppBuildParser");
+                    return file.isDirectory() || isClassIncluded(file.getPath(), parser.getClassOrPackageNames());
+                }});
+                task.getOptions().setSourcepath(project.files(new Callable<Set<File>>() { public Set<File> call() {
+                    return main.getJava().getSrcDirs();
+                }}));
                 task.setClasspath(main.getCompileClasspath());
                 setProperty(
                     "setDestinationDir", // Deprecated in 7.1, will be removed in Gradle 9.0
                     "getDestinationDirectory", // Since 6.1
                     task,
-                    getProperty(
-                        "getOutputDir", // Deprecated in 7.1, removed in Gradle 8.0
-                        "getClassesDirectory", // Since 6.1
-                        main.getJava()
-                    )
+                    findMethod(task.getClass(), "setDestinationDir", File.class) != null ? javacppClassesDir
+                            : project.getLayout().getProjectDirectory().dir(javacppClassesDir.getAbsolutePath())
                 );
                 task.dependsOn("javacppBuildCommand");
             }});
 
             project.getTasks().register("javacppBuildParser",
                     BuildTask.class, new Action<BuildTask>() { public void execute(final BuildTask task) {
-                task.classPath = paths;
+                task.classPath = parserPaths;
                 task.properties = getPlatform();
                 if (getPlatformExtension() != null && getPlatformExtension().length() > 0) {
                     task.propertyKeysAndValues = new Properties();
@@ -227,6 +386,8 @@ public class BuildPlugin implements Plugin<Project> {
                     task.propertyKeysAndValues = new Properties();
                     task.propertyKeysAndValues.setProperty("platform.extension", getPlatformExtension());
                 }
+                // shared by all projects of the build, since it does not depend on the preset
+                task.runtimeDirectory = new File(project.getRootProject().getBuildDir(), "javacpp/runtime");
                 task.dependsOn("compileJava");
             }});
 
@@ -245,13 +406,43 @@ public class BuildPlugin implements Plugin<Project> {
 
             Jar jarTask = (Jar)project.getTasks().getByName("jar");
             jarTask.dependsOn("javacppPomProperties");
+            dependsOnLibraryPath(jarTask);
             jarTask.exclude(new Spec<FileTreeElement>() { public boolean isSatisfiedBy(FileTreeElement file) {
                 return isLibraryPath(file.getPath());
             }});
 
+            final TaskProvider<IndexTask> javacppIndexTask = project.getTasks().register("javacppIndex",
+                    IndexTask.class, new Action<IndexTask>() { public void execute(IndexTask task) {
+                task.libraries = main.getOutput().getAsFileTree().matching(new PatternSet().include(new Spec<FileTreeElement>() {
+                    public boolean isSatisfiedBy(FileTreeElement file) {
+                        return file.isDirectory() || isLibraryPath(file.getPath());
+                    }
+                }));
+                task.outputDirectory = new File(project.getBuildDir(), "javacpp/index");
+                task.dependsOn("javacppBuildCompiler");
+                dependsOnLibraryPath(task);
+            }});
+
+            project.getTasks().register("javacppSizeReport",
+                    SizeTask.class, new Action<SizeTask>() { public void execute(SizeTask task) {
+                task.setGroup("reporting");
+                task.setDescription("Reports the size of sections and symbols in native libraries built for the platform.");
+                task.libraries = main.getOutput().getAsFileTree().matching(new PatternSet().include(new Spec<FileTreeElement>() {
+                    public boolean isSatisfiedBy(FileTreeElement file) {
+                        return file.isDirectory() || isLibraryPath(file.getPath());
+                    }
+                }));
+                task.outputFile = new File(project.getBuildDir(), "reports/javacpp/size.json");
+                task.dependsOn("javacppBuildCompiler");
+                dependsOnLibraryPath(task);
+            }});
+
             TaskProvider<Jar> javacppJarTask = project.getTasks().register("javacppJar",
                     Jar.class, new Action<Jar>() { public void execute(Jar task) {
+                reproducible(task);
                 task.from(main.getOutput());
+                task.from(javacppIndexTask);
+                dependsOnLibraryPath(task);
                 setProperty(
                     "setClassifier", // Deprecated in 7.0, removed in 8.0
                     "getArchiveClassifier", // Since 5.1
@@ -267,6 +458,7 @@ public class BuildPlugin implements Plugin<Project> {
 
             TaskProvider<Jar> javacppPlatformJarTask = project.getTasks().register("javacppPlatformJar",
                     Jar.class, new Action<Jar>() { public void execute(Jar task) {
+                reproducible(task);
                 setProperty(
                     "setBaseName", // Deprecated in 7.0, removed in 8.0
                     "getArchiveBaseName", // Since 5.1
@@ -277,6 +469,7 @@ public class BuildPlugin implements Plugin<Project> {
 
             TaskProvider<Jar> javacppPlatformJavadocJarTask = project.getTasks().register("javacppPlatformJavadocJar",
                     Jar.class, new Action<Jar>() { public void execute(Jar task) {
+                reproducible(task);
                 setProperty(
                     "setBaseName", // Deprecated in 7.0, removed in 8.0
                     "getArchiveBaseName", // Since 5.1
@@ -292,6 +485,7 @@ public class BuildPlugin implements Plugin<Project> {
 
             TaskProvider<Jar> javacppPlatformSourcesTask = project.getTasks().register("javacppPlatformSourcesJar",
                     Jar.class, new Action<Jar>() { public void execute(Jar task) {
+                reproducible(task);
                 setProperty(
                     "setBaseName", // Deprecated in 7.0, removed in 8.0
                     "getArchiveBaseName", // Since 5.1
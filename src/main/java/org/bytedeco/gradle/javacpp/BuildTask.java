@@ -22,30 +22,64 @@
 package org.bytedeco.gradle.javacpp;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import javax.inject.Inject;
+import org.bytedeco.javacpp.ClassProperties;
 import org.bytedeco.javacpp.Loader;
 import org.bytedeco.javacpp.tools.Builder;
 import org.bytedeco.javacpp.tools.Logger;
 import org.bytedeco.javacpp.tools.ParserException;
 import org.bytedeco.javacpp.tools.Slf4jLogger;
+import org.gradle.api.Action;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
 import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.plugins.ExtraPropertiesExtension;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.specs.Spec;
-import org.gradle.api.tasks.Classpath;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputDirectory;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.util.PatternFilterable;
+import org.gradle.util.GradleVersion;
+import org.gradle.workers.ProcessWorkerSpec;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
 
 /**
  * A Gradle task that wraps {@link Builder}.
+ * <p>
+ * It is not cacheable, since it usually writes the native libraries into the directories of classes on its class path,
+ * which are outputs of "compileJava" as well, and the parser into source directories, none of which Gradle can restore
+ * from the build cache. Stores shared across tasks, like {@link #precompiledHeaderDirectory} and {@link #runtimeDirectory},
+ * are not outputs either, but get keyed by hash, and updated atomically.
  *
  * @author Samuel Audet
  */
@@ -92,7 +126,7 @@ public class BuildTask extends DefaultTask {
     /** Output everything in a file named after given outputName. */
     String outputName = null;
 
-    /** Delete all files from {@link #outputDirectory} before generating anything in it. */
+    /** Delete all files from {@link #outputDirectory} before generating anything in it, or when only parsing, all files that were not generated again. */
     boolean clean = false;
 
     /** Generate .cpp files from Java interfaces if found, parsing from header files if not. */
@@ -131,6 +165,9 @@ public class BuildTask extends DefaultTask {
     /** Process only these classes or packages (suffixed with .* or .**). */
     String[] classOrPackageNames = null;
 
+    /** Process only the classes listed in this file, one per line, instead of classOrPackageNames, as written by {@link UsageTask}. */
+    File classListFile = null;
+
     /** Execute a build command instead of JavaCPP itself, and return. */
     String[] buildCommand = null;
 
@@ -146,16 +183,59 @@ public class BuildTask extends DefaultTask {
     /** Pass compilerOptions directly to compiler. */
     String[] compilerOptions = null;
 
+    /**
+     * Precompile into subdirectories of this directory named after a hash of the compiler, its options, and the preamble, the headers
+     * of generated JNI code, once per platform and compiler options (GCC and Clang only), to share them across tasks, such as variants.
+     */
+    File precompiledHeaderDirectory = null;
+
+    /** Compile into this directory the common jnijavacpp.cpp, once per content and compiler options (GCC and Clang only), to share it across projects. */
+    File runtimeDirectory = null;
+
+    /** Keep in this file the headers included and the libraries linked by each compilation, or in "javacpp/<task name>.d" in the build directory when null. */
+    File dependencyFile = null;
+
+    /** Write the properties used by {@link Builder} to this file, or to "javacpp/<task name>.properties" in the build directory when null. */
+    File propertiesFile = null;
+
+    /** Replace the default options of GCC and Clang with the ones for a "debug" or a "release" build, or keep them when null. */
+    String buildType = null;
+
+    /** Optimize at link time as well when {@link #buildType} is "release". */
+    boolean linkTimeOptimization = false;
+
     /** Skip the execution. */
     boolean skip = false;
 
+    /** Run {@link Builder} in a worker process, reused across tasks, instead of in the Gradle daemon (Gradle 5.6 or newer). */
+    boolean fork = false;
+
+    /** Set the maximum heap size of the worker process, such as "2g", when {@link #fork} is true. */
+    String maxHeapSize = null;
+
+    /** Pass these arguments to the JVM of the worker process, when {@link #fork} is true. */
+    String[] jvmArgs = null;
+
+    /** Reuse class loaders and platform properties from this cache, if available. */
+    Provider<BuilderCache> builderCache = null;
+
+    /** Limit the number of native subprocesses running concurrently with this governor, if available. */
+    Provider<BuildGovernor> buildGovernor = null;
+
     public BuildTask() {
-        // disable incremental builds until we get proper support for them
-        getOutputs().upToDateWhen(new Spec<Task>() { public boolean isSatisfiedBy(Task t) { return false; }});
+        // disable incremental builds, unless a previous compilation recorded its headers and libraries as inputs, or when only parsing,
+        // we could find the headers to parse, while build commands have no known inputs, so they always run, as with Maven
+        getOutputs().upToDateWhen(new Spec<Task>() { public boolean isSatisfiedBy(Task t) {
+            try {
+                return getBuildCommand() == null && (getCompile() ? getDependencyFile().isFile() : findParsedHeaders() != null);
+            } catch (IOException e) {
+                getLogger().warn("Could not find the headers to parse: " + e);
+                return false;
+            }
+        }});
     }
 
-    @Optional @Classpath
-         @InputFiles public String[] getClassPath()       { return classPath;       } public void setClassPath      (String[] s) { classPath       = s; }
+    @Optional @Internal public String[] getClassPath()    { return classPath;       } public void setClassPath      (String[] s) { classPath       = s; }
     @Optional @Input public String[] getIncludePath()     { return includePath;     } public void setIncludePath    (String[] s) { includePath     = s; }
     @Optional @Input public String[] getIncludeResource() { return includeResource; } public void setIncludeResource(String[] s) { includeResource = s; }
     @Optional @Input public String[] getBuildPath()       { return buildPath;       } public void setBuildPath      (String[] s) { buildPath       = s; }
@@ -184,13 +264,319 @@ public class BuildTask extends DefaultTask {
     @Optional @InputFile public File getPropertyFile()    { return propertyFile;    } public void setPropertyFile   (File f)     { propertyFile    = f; }
     @Optional @Input public Properties getPropertyKeysAndValues() { return propertyKeysAndValues; } public void setPropertyKeysAndValues(Properties p) { propertyKeysAndValues = p; }
     @Optional @Input public String[]   getClassOrPackageNames()   { return classOrPackageNames;   } public void setClassOrPackageNames  (String[] s)   { classOrPackageNames   = s; }
+    @Optional @InputFile public File   getClassListFile()         { return classListFile;         } public void setClassListFile        (File f)       { classListFile         = f; }
     @Optional @Input public String[]   getBuildCommand()          { return buildCommand;          } public void setBuildCommand         (String[] s)   { buildCommand          = s; }
     @Optional @Input public String[]   getTargetDirectory()       { return targetDirectory;       } public void setTargetDirectory      (String[] s)   { targetDirectory       = s; }
     @Optional
     @InputDirectory  public File       getWorkingDirectory()      { return workingDirectory;      } public void setWorkingDirectory     (File f)       { workingDirectory      = f; }
     @Optional @Input public Map<String, String> getEnvironmentVariables() { return environmentVariables; } public void setEnvironmentVariables (Map<String, String> m) { environmentVariables = m; }
     @Optional @Input public String[]   getCompilerOptions()       { return compilerOptions;       } public void setCompilerOptions      (String[] s)   { compilerOptions       = s; }
+    @Optional @Internal public File    getPrecompiledHeaderDirectory() { return precompiledHeaderDirectory; } public void setPrecompiledHeaderDirectory(File f) { precompiledHeaderDirectory = f; }
+    @Optional @Internal public File    getRuntimeDirectory()      { return runtimeDirectory;      } public void setRuntimeDirectory     (File f)       { runtimeDirectory      = f; }
+     @OutputFile public File       getDependencyFile()        { return dependencyFile != null ? dependencyFile : new File(getProject().getBuildDir(), "javacpp/" + getName() + ".d"); } public void setDependencyFile(File f) { dependencyFile = f; }
+    @Optional @Input public String     getBuildType()             { return buildType;             } public void setBuildType            (String s)     { buildType             = s; }
+              @Input public boolean    getLinkTimeOptimization()  { return linkTimeOptimization;  } public void setLinkTimeOptimization (boolean b)    { linkTimeOptimization  = b; }
               @Input public boolean    getSkip()                  { return skip;                  } public void setSkip                 (boolean b)    { skip                  = b; }
+     @OutputFile public File       getPropertiesFile()        { return propertiesFile != null ? propertiesFile : new File(getProject().getBuildDir(), "javacpp/" + getName() + ".properties"); } public void setPropertiesFile(File f) { propertiesFile = f; }
+           @Internal public boolean    getFork()                  { return fork;                  } public void setFork                 (boolean b)    { fork                  = b; }
+    @Optional @Internal public String  getMaxHeapSize()           { return maxHeapSize;           } public void setMaxHeapSize          (String s)     { maxHeapSize           = s; }
+    @Optional @Internal public String[] getJvmArgs()              { return jvmArgs;               } public void setJvmArgs              (String[] s)   { jvmArgs               = s; }
+    @Optional @Internal public Provider<BuilderCache> getBuilderCache() { return builderCache; } public void setBuilderCache(Provider<BuilderCache> p) { builderCache = p; }
+    @Optional @Internal public Provider<BuildGovernor> getBuildGovernor() { return buildGovernor; } public void setBuildGovernor(Provider<BuildGovernor> p) { buildGovernor = p; }
+
+    @Inject public WorkerExecutor getWorkerExecutor() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the directory where the parser generates Java files, to update in {@link #getOutputDirectory()} only the ones that changed,
+     * or null when the task does more than parsing, in which case files get generated directly in the output directory.
+     */
+    @Internal public File getStagingDirectory() {
+        return getGenerate() && !getCompile() && getBuildCommand() == null && getOutputDirectory() != null ? new File(getTemporaryDir(), "generated") : null;
+    }
+
+    /**
+     * Moves the files from source to target, but only when their content differs, to keep timestamps for incremental compilation.
+     * Also deletes from target the files listed in the manifest that were not generated again, or with clean, all files not generated again.
+     * The manifest then gets updated with the files found in source. Returns the number of files created, updated, or deleted.
+     */
+    static int syncDirectory(File source, File target, File manifest, boolean clean) throws IOException {
+        final List<String> paths = new ArrayList<String>();
+        listFiles(source, "", paths);
+        int changed = 0;
+        for (String path : paths) {
+            File in = new File(source, path), out = new File(target, path);
+            if (out.isFile() && out.length() == in.length()
+                    && Arrays.equals(Files.readAllBytes(in.toPath()), Files.readAllBytes(out.toPath()))) {
+                continue;
+            }
+            out.getParentFile().mkdirs();
+            Files.move(in.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            changed++;
+        }
+
+        List<String> stale = new ArrayList<String>();
+        if (clean) {
+            listFiles(target, "", stale);
+        } else if (manifest.isFile()) {
+            stale.addAll(Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8));
+        }
+        stale.removeAll(paths);
+        for (String path : stale) {
+            File file = new File(target, path);
+            if (file.isFile() && file.delete()) {
+                changed++;
+                // also remove the directories left empty, but not the target itself
+                File dir = file.getParentFile();
+                while (!dir.equals(target) && dir.delete()) {
+                    dir = dir.getParentFile();
+                }
+            }
+        }
+
+        manifest.getParentFile().mkdirs();
+        Files.write(manifest.toPath(), paths, StandardCharsets.UTF_8);
+        return changed;
+    }
+
+    /** Adds to paths the relative paths of all files under the directory, in a consistent order. */
+    static void listFiles(File dir, String prefix, List<String> paths) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listFiles(file, prefix + file.getName() + "/", paths);
+            } else {
+                paths.add(prefix + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Returns the headers included and the libraries linked by the native compilations of the previous execution, as recorded
+     * in {@link #getDependencyFile()}, which are the files that can change the outputs when the options do not, along with,
+     * with {@link #copyResources}, all files under {@link #resourcePath}. Libraries only preloaded get copied, not linked,
+     * so they are not part of it. On the first execution, the depfile does not exist yet, but neither do the outputs.
+     */
+    @InputFiles public FileCollection getNativeDependencies() throws IOException {
+        List<Object> files = new ArrayList<Object>();
+        File depfile = getDependencyFile();
+        if (getBuildCommand() == null && getCompile() && depfile.isFile()) {
+            for (String path : BuildExecutor.readDependencies(depfile)) {
+                files.add(new File(path));
+            }
+        }
+        if (getCopyResources() && getResourcePath() != null) {
+            for (String path : getResourcePath()) {
+                files.add(getProject().fileTree(path));
+            }
+        }
+        return getProject().files(files.toArray());
+    }
+
+    /**
+     * Returns the files of {@link #classPath}, except the ones under directories named after the platform, where {@link Builder}
+     * outputs native libraries and copies resources next to the classes, which would otherwise change the inputs of the task itself.
+     */
+    @InputFiles public FileCollection getClassPathFiles() throws IOException {
+        if (getClassPath() == null) {
+            return getProject().files();
+        }
+        Properties properties = loadPlatformProperties();
+        final String platform = properties.getProperty("platform", "") + properties.getProperty("platform.extension", "");
+        return getProject().files((Object[])getClassPath()).getAsFileTree().matching(new Action<PatternFilterable>() {
+            @Override public void execute(PatternFilterable pattern) {
+                pattern.exclude(new Spec<FileTreeElement>() { public boolean isSatisfiedBy(FileTreeElement element) {
+                    return element.isDirectory() && element.getName().equals(platform);
+                }});
+            }
+        });
+    }
+
+    /**
+     * Returns the headers that Parser reads when only parsing, to let the task be up to date, and let continuous builds run it again
+     * only after one of them changes. Parser does not follow the includes of these headers, so they are all the files it parses.
+     */
+    @InputFiles public FileCollection getParsedHeaders() throws IOException {
+        List<File> headers = findParsedHeaders();
+        return getProject().files(headers != null ? headers.toArray() : new Object[0]);
+    }
+
+    /**
+     * Returns the headers listed in the "platform.include" and "platform.cinclude" properties, inherited ones included, of the
+     * classes matched by {@link #classOrPackageNames} that target other classes, as found in the include paths the way Parser
+     * looks for them, or null when the task does more than parsing, or when the classes cannot be loaded.
+     */
+    List<File> findParsedHeaders() throws IOException {
+        if (getStagingDirectory() == null || getClassPath() == null) {
+            return null;
+        }
+        List<String> classNames = findClassNames(getClassPath(), getBuildOptions().classOrPackageNames);
+        Properties properties = loadPlatformProperties();
+        List<File> headers = new ArrayList<File>();
+        BuilderCache cache = getBuilderCache() != null ? getBuilderCache().get() : null;
+        URLClassLoader loader = null;
+        try {
+            ClassLoader classLoader = cache != null ? cache.getClassLoader(getClassPath()) : null;
+            if (classLoader == null) {
+                URL[] urls = new URL[getClassPath().length];
+                for (int i = 0; i < urls.length; i++) {
+                    urls[i] = new File(getClassPath()[i]).toURI().toURL();
+                }
+                classLoader = loader = new URLClassLoader(urls, BuildTask.class.getClassLoader());
+            }
+            for (String name : classNames) {
+                Class<?> c = Class.forName(name, false, classLoader);
+                ClassProperties p = Loader.loadProperties(c, properties, false);
+                String target = p.getProperty("global");
+                if (!p.isLoaded() || target == null || c.getName().equals(target)) {
+                    continue;
+                }
+                ClassProperties allProperties = Loader.loadProperties(c, properties, true);
+                List<String> includePaths = new ArrayList<String>(allProperties.get("platform.includepath"));
+                for (String resource : allProperties.get("platform.includeresource")) {
+                    for (File f : Loader.cacheResources(resource)) {
+                        includePaths.add(Loader.getCanonicalPath(f));
+                    }
+                }
+                // Parser also looks in the package of the target, relative to the class path
+                String globalPath = target.replace('.', File.separatorChar);
+                int n = globalPath.lastIndexOf(File.separatorChar);
+                for (String path : getClassPath()) {
+                    includePaths.add(n >= 0 ? path + File.separator + globalPath.substring(0, n) : path);
+                }
+                List<String> includes = new ArrayList<String>(allProperties.get("platform.cinclude"));
+                includes.addAll(allProperties.get("platform.include"));
+                for (String include : includes) {
+                    File header = findHeader(include, includePaths);
+                    if (header != null && !headers.contains(header)) {
+                        headers.add(header);
+                    }
+                }
+            }
+        } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            getLogger().info("Could not load the classes to parse: " + e);
+            return null;
+        } finally {
+            if (loader != null) {
+                loader.close();
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Returns the names of the top-level classes found in the directories and JAR files of the class path, and matched
+     * by the names of classes or packages, as {@link Builder} would process them, or all of them when there are no names.
+     */
+    static List<String> findClassNames(String[] classPath, String[] classOrPackageNames) throws IOException {
+        List<String> classNames = new ArrayList<String>();
+        for (String path : classPath) {
+            List<String> files = new ArrayList<String>();
+            if (new File(path).isFile()) {
+                JarFile jar = new JarFile(path);
+                try {
+                    for (JarEntry entry : Collections.list(jar.entries())) {
+                        files.add(entry.getName());
+                    }
+                } finally {
+                    jar.close();
+                }
+            } else {
+                listFiles(new File(path), "", files);
+            }
+            for (String file : files) {
+                String name = file.endsWith(".class") ? file.substring(0, file.length() - 6) : null;
+                if (name != null && !name.contains("$") && BuildPlugin.isClassIncluded(name, classOrPackageNames)
+                        && !classNames.contains(name.replace('/', '.'))) {
+                    classNames.add(name.replace('/', '.'));
+                }
+            }
+        }
+        return classNames;
+    }
+
+    /** Returns the header file, found as Parser does, first as is unless between angle brackets, then in the include paths, or null. */
+    static File findHeader(String include, List<String> includePaths) throws IOException {
+        String filename = include;
+        if (filename.startsWith("<") && filename.endsWith(">")) {
+            filename = filename.substring(1, filename.length() - 1);
+        } else if (filename.length() > 0 && new File(filename).exists()) {
+            return new File(filename).getAbsoluteFile();
+        }
+        for (String path : includePaths) {
+            File file = Loader.getCanonicalFile(new File(path, filename));
+            if (filename.length() > 0 && file.exists()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the platform properties as {@link Builder} loads them, before looking at classes, with the include paths of this task. */
+    Properties loadPlatformProperties() throws IOException {
+        Properties properties = Loader.loadProperties(getProperties() != null ? getProperties() : Loader.Detector.getPlatform(), null);
+        if (getPropertyFile() != null) {
+            properties.putAll(loadProperties(getPropertyFile()));
+        }
+        if (getPropertyKeysAndValues() != null) {
+            properties.putAll(getPropertyKeysAndValues());
+        }
+        addProperty(properties, "platform.includepath", getIncludePath());
+        addProperty(properties, "platform.includeresource", getIncludeResource());
+        return properties;
+    }
+
+    /** Appends the values to the property, separated as with {@link Builder#addProperty(String, String...)}. */
+    static void addProperty(Properties properties, String key, String[] values) {
+        if (values != null && values.length > 0) {
+            String separator = properties.getProperty("platform.path.separator");
+            String value = properties.getProperty(key, "");
+            for (String s : values) {
+                value += value.length() == 0 || value.endsWith(separator) ? s : separator + s;
+            }
+            properties.setProperty(key, value);
+        }
+    }
+
+    /** Returns the executable of "platform.compiler", as found on the PATH, when compiling with JavaCPP itself, or nothing otherwise. */
+    @InputFiles public FileCollection getCompilerFile() throws IOException {
+        if (getBuildCommand() != null || !getCompile()) {
+            return getProject().files();
+        }
+        String compiler = loadPlatformProperties().getProperty("platform.compiler");
+        File file = compiler != null ? BuildExecutor.findExecutable(compiler, getEnvironmentVariables()) : null;
+        return file != null && file.isFile() ? getProject().files(file) : getProject().files();
+    }
+
+    /**
+     * Returns the properties that {@link Builder} used during the last execution, as written to {@link #getPropertiesFile()},
+     * for example to get "platform.library.path", or no value before the first execution. Other tasks that depend
+     * on them should also declare that file as input, which this provider does not carry.
+     */
+    @Internal public Provider<Properties> getEffectiveProperties() {
+        return getProject().provider(new Callable<Properties>() { public Properties call() throws IOException {
+            File file = getPropertiesFile();
+            return file.isFile() ? loadProperties(file) : null;
+        }});
+    }
+
+    /**
+     * Sets on the project, as in previous versions, "javacpp.*" extra properties with the values of the given properties.
+     *
+     * @deprecated Use {@link #getEffectiveProperties()} instead. The extra properties get set only when the task executes,
+     *             not when it is up to date, and they will be removed in the next release.
+     */
+    @Deprecated void setProjectProperties(Properties properties) {
+        ExtraPropertiesExtension projectProperties = getProject().getExtensions().getExtraProperties();
+        for (String key : properties.stringPropertyNames()) {
+            projectProperties.set("javacpp." + key, properties.getProperty(key));
+        }
+    }
 
     @TaskAction public void build() throws IOException, ClassNotFoundException, NoClassDefFoundError, InterruptedException, ParserException {
         Logger logger = new Slf4jLogger(Builder.class);
@@ -199,56 +585,259 @@ public class BuildTask extends DefaultTask {
             logger.info("Skipping execution of JavaCPP Builder");
             return;
         }
+        // an empty list would otherwise mean all classes to the Builder
+        if (getClassListFile() != null && readClassList().isEmpty()) {
+            logger.warn("Skipping execution of JavaCPP Builder: No classes listed in " + getClassListFile());
+            return;
+        }
+
+        File stagingDirectory = getStagingDirectory();
+        if (stagingDirectory != null) {
+            getProject().delete(stagingDirectory);
+        }
+        // record only the dependencies of this execution, not the ones of compilations that no longer happen
+        getDependencyFile().delete();
+
+        if (getFork() && GradleVersion.current().compareTo(GradleVersion.version("5.6")) >= 0) {
+            fork();
+        } else {
+            if (getFork()) {
+                logger.warn("Could not fork JavaCPP Builder: Gradle 5.6 or newer is required");
+            }
+            BuilderCache cache = getBuilderCache() != null ? getBuilderCache().get() : null;
+            ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+            try {
+                if (cache != null && getClassPath() != null) {
+                    // Builder loads classes with a UserClassLoader whose parent is the context class loader
+                    Thread.currentThread().setContextClassLoader(cache.getClassLoader(getClassPath()));
+                }
+                build(logger, cache);
+            } finally {
+                Thread.currentThread().setContextClassLoader(contextClassLoader);
+            }
+        }
+
+        if (stagingDirectory != null) {
+            int changed = syncDirectory(stagingDirectory, getOutputDirectory(), new File(getTemporaryDir(), "generated.txt"), getClean());
+            getLogger().info("Updated " + changed + " generated files in " + getOutputDirectory());
+        }
+
+        if (getPropertiesFile().isFile()) {
+            setProjectProperties(loadProperties(getPropertiesFile()));
+        }
+    }
+
+    /**
+     * Copies to this task all the options of the other task, except its class path, {@link #buildType}, and the files and directories
+     * that belong only to it, that is {@link #outputDirectory}, {@link #configDirectory}, {@link #dependencyFile}, and {@link #propertiesFile}.
+     */
+    void copyOptions(BuildTask task) {
+        includePath = task.getIncludePath();
+        includeResource = task.getIncludeResource();
+        buildPath = task.getBuildPath();
+        buildResource = task.getBuildResource();
+        linkPath = task.getLinkPath();
+        linkResource = task.getLinkResource();
+        preloadPath = task.getPreloadPath();
+        preloadResource = task.getPreloadResource();
+        resourcePath = task.getResourcePath();
+        executablePath = task.getExecutablePath();
+        encoding = task.getEncoding();
+        outputName = task.getOutputName();
+        clean = task.getClean();
+        generate = task.getGenerate();
+        compile = task.getCompile();
+        deleteJniFiles = task.getDeleteJniFiles();
+        header = task.getHeader();
+        copyLibs = task.getCopyLibs();
+        copyResources = task.getCopyResources();
+        jarPrefix = task.getJarPrefix();
+        properties = task.getProperties();
+        propertyFile = task.getPropertyFile();
+        propertyKeysAndValues = task.getPropertyKeysAndValues();
+        classOrPackageNames = task.getClassOrPackageNames();
+        classListFile = task.getClassListFile();
+        buildCommand = task.getBuildCommand();
+        targetDirectory = task.getTargetDirectory();
+        workingDirectory = task.getWorkingDirectory();
+        environmentVariables = task.getEnvironmentVariables();
+        compilerOptions = task.getCompilerOptions();
+        precompiledHeaderDirectory = task.getPrecompiledHeaderDirectory();
+        runtimeDirectory = task.getRuntimeDirectory();
+        linkTimeOptimization = task.getLinkTimeOptimization();
+        skip = task.getSkip();
+        fork = task.getFork();
+        maxHeapSize = task.getMaxHeapSize();
+        jvmArgs = task.getJvmArgs();
+    }
+
+    /** Returns the names of the classes listed in {@link #classListFile}, skipping blank lines. */
+    List<String> readClassList() {
+        List<String> names = new ArrayList<String>();
+        try {
+            for (String line : Files.readAllLines(getClassListFile().toPath(), StandardCharsets.UTF_8)) {
+                if (line.trim().length() > 0) {
+                    names.add(line.trim());
+                }
+            }
+        } catch (IOException e) {
+            throw new GradleException("Could not read " + getClassListFile() + ": " + e, e);
+        }
+        return names;
+    }
 
-        Builder builder = new Builder(logger)
-                .classPaths(getClassPath())
-                .encoding(getEncoding())
-                .outputDirectory(getOutputDirectory())
-                .outputName(getOutputName())
-                .clean(getClean())
-                .generate(getGenerate())
-                .compile(getCompile())
-                .deleteJniFiles(getDeleteJniFiles())
-                .header(getHeader())
-                .copyLibs(getCopyLibs())
-                .copyResources(getCopyResources())
-                .configDirectory(getConfigDirectory())
-                .jarPrefix(getJarPrefix())
-                .properties(getProperties())
-                .propertyFile(getPropertyFile())
-                .properties(getPropertyKeysAndValues())
-                .classesOrPackages(getClassOrPackageNames())
-                .buildCommand(getBuildCommand())
-                .workingDirectory(getWorkingDirectory())
-                .environmentVariables(getEnvironmentVariables())
-                .compilerOptions(getCompilerOptions())
-                .commandExecutor(new BuildExecutor(logger))
-
-                .addProperty("platform.buildpath", getBuildPath())
-                .addProperty("platform.buildresource", getBuildResource())
-                .addProperty("platform.includepath", getIncludePath())
-                .addProperty("platform.includeresource", getIncludeResource())
-                .addProperty("platform.linkpath", getLinkPath())
-                .addProperty("platform.linkresource", getLinkResource())
-                .addProperty("platform.preloadpath", getPreloadPath())
-                .addProperty("platform.preloadresource", getPreloadResource())
-                .addProperty("platform.resourcepath", getResourcePath())
-                .addProperty("platform.executablepath", getExecutablePath());
+    /** Returns a snapshot of the options of this task, with the number of permits of the governor to hold, if any. */
+    BuildOptions getBuildOptions() {
+        BuildOptions options = new BuildOptions();
+        options.classPath = getClassPath();
+        options.includePath = getIncludePath();
+        options.includeResource = getIncludeResource();
+        options.buildPath = getBuildPath();
+        options.buildResource = getBuildResource();
+        options.linkPath = getLinkPath();
+        options.linkResource = getLinkResource();
+        options.preloadPath = getPreloadPath();
+        options.preloadResource = getPreloadResource();
+        options.resourcePath = getResourcePath();
+        options.executablePath = getExecutablePath();
+        options.encoding = getEncoding();
+        options.outputDirectory = getStagingDirectory() != null ? getStagingDirectory() : getOutputDirectory();
+        options.outputName = getOutputName();
+        options.clean = getStagingDirectory() == null && getClean();
+        options.generate = getGenerate();
+        options.compile = getCompile();
+        options.deleteJniFiles = getDeleteJniFiles();
+        options.header = getHeader();
+        options.copyLibs = getCopyLibs();
+        options.copyResources = getCopyResources();
+        options.configDirectory = getConfigDirectory();
+        options.jarPrefix = getJarPrefix();
+        options.properties = getProperties();
+        options.propertyFile = getPropertyFile();
+        options.propertyKeysAndValues = getPropertyKeysAndValues();
+        options.classOrPackageNames = getClassOrPackageNames();
+        if (getClassListFile() != null) {
+            List<String> names = readClassList();
+            options.classOrPackageNames = names.toArray(new String[names.size()]);
+        }
+        options.buildCommand = getBuildCommand();
+        options.workingDirectory = getWorkingDirectory();
+        options.environmentVariables = getEnvironmentVariables() != null ? new LinkedHashMap<String, String>(getEnvironmentVariables()) : null;
+        options.compilerOptions = getCompilerOptions();
+        options.precompiledHeaderDirectory = getPrecompiledHeaderDirectory();
+        options.runtimeDirectory = getRuntimeDirectory();
+        options.dependencyFile = getDependencyFile();
+        options.buildType = getBuildType();
+        options.linkTimeOptimization = getLinkTimeOptimization();
+        if (getBuildGovernor() != null && getBuildCommand() != null) {
+            BuildGovernor governor = getBuildGovernor().get();
+            // let the build command use as many jobs as it holds permits, respecting any value set by the user
+            String makej = options.environmentVariables != null ? options.environmentVariables.get("MAKEJ") : null;
+            if (makej == null) {
+                makej = System.getenv("MAKEJ");
+            }
+            try {
+                options.permits = makej != null ? Integer.parseInt(makej.trim()) : governor.getPermits();
+            } catch (NumberFormatException e) {
+                options.permits = governor.getPermits();
+            }
+            options.permits = Math.max(1, Math.min(options.permits, governor.getPermits()));
+            if (options.environmentVariables == null) {
+                options.environmentVariables = new LinkedHashMap<String, String>();
+            }
+            options.environmentVariables.put("MAKEJ", String.valueOf(options.permits));
+        }
+        return options;
+    }
+
+    void build(Logger logger, BuilderCache cache) throws IOException, ClassNotFoundException, NoClassDefFoundError, InterruptedException, ParserException {
+        BuildOptions options = getBuildOptions();
+        BuildExecutor executor = options.createExecutor(logger);
+        if (getBuildGovernor() != null) {
+            executor.governor = getBuildGovernor().get();
+        }
+        Builder builder = options.createBuilder(logger, cache, executor);
 
         String extension = builder.getProperty("platform.extension");
         getLogger().info("Detected platform \"" + Loader.Detector.getPlatform() + "\"");
         getLogger().info("Building platform \"" + builder.getProperty("platform") + "\""
                 + (extension != null && extension.length() > 0 ? " with extension \"" + extension + "\"" : ""));
 
-        ExtraPropertiesExtension projectProperties = getProject().getExtensions().getExtraProperties();
-        for (String key : builder.getProperties().stringPropertyNames()) {
-            projectProperties.set("javacpp." + key, builder.getProperties().getProperty(key));
-        }
+        storeProperties(builder.getProperties(), getPropertiesFile());
 
         File[] outputFiles = builder.build();
+        options.copyFiles(logger, builder, outputFiles);
 
         if (getLogger().isDebugEnabled()) {
             getLogger().debug("outputFiles: " + Arrays.deepToString(outputFiles));
         }
     }
+
+    /** Runs {@link BuildWorker} in a separate process, holding for it the permits that its subprocesses would otherwise acquire. */
+    void fork() throws IOException, InterruptedException {
+        final BuildOptions options = getBuildOptions();
+        final File propertiesFile = getPropertiesFile();
+        propertiesFile.delete();
+        BuildGovernor governor = getBuildGovernor() != null ? getBuildGovernor().get() : null;
+        int acquired = governor != null ? governor.acquire(options.permits) : 0;
+        try {
+            // workers with the same options and classpath get reused by Gradle for other tasks
+            WorkQueue queue = getWorkerExecutor().processIsolation(new Action<ProcessWorkerSpec>() {
+                @Override public void execute(ProcessWorkerSpec spec) {
+                    if (getMaxHeapSize() != null) {
+                        spec.getForkOptions().setMaxHeapSize(getMaxHeapSize());
+                    }
+                    if (getJvmArgs() != null) {
+                        spec.getForkOptions().jvmArgs((Object[])getJvmArgs());
+                    }
+                }
+            });
+            queue.submit(BuildWorker.class, new Action<BuildWorker.Parameters>() {
+                @Override public void execute(BuildWorker.Parameters parameters) {
+                    parameters.getOptions().set(options);
+                    parameters.getPropertiesFile().set(propertiesFile);
+                }
+            });
+            queue.await();
+        } finally {
+            if (governor != null) {
+                governor.release(acquired);
+            }
+        }
+
+        if (propertiesFile.isFile()) {
+            getLogger().info("Built platform \"" + loadProperties(propertiesFile).getProperty("platform") + "\" in a worker process");
+        }
+    }
+
+    /** Writes the properties sorted by key and without timestamp, so that the file changes only when the properties do. */
+    static void storeProperties(Properties properties, File file) throws IOException {
+        StringBuilder s = new StringBuilder();
+        for (String key : new TreeSet<String>(properties.stringPropertyNames())) {
+            // let Properties escape each entry, but leave out its comments
+            Properties entry = new Properties();
+            entry.setProperty(key, properties.getProperty(key));
+            StringWriter writer = new StringWriter();
+            entry.store(writer, null);
+            for (String line : writer.toString().split("\r?\n")) {
+                if (!line.startsWith("#")) {
+                    s.append(line).append('\n');
+                }
+            }
+        }
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        Files.write(file.toPath(), s.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /** Reads properties written by {@link #storeProperties(Properties, File)}. */
+    static Properties loadProperties(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream is = new FileInputStream(file);
+        try {
+            properties.load(is);
+        } finally {
+            is.close();
+        }
+        return properties;
+    }
 }
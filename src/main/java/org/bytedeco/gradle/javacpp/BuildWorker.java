@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.util.Arrays;
+import org.bytedeco.javacpp.tools.Builder;
+import org.bytedeco.javacpp.tools.Logger;
+import org.bytedeco.javacpp.tools.Slf4jLogger;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+/**
+ * Runs {@link Builder} in a worker process on behalf of {@link BuildTask}, keeping the memory it uses
+ * out of the Gradle daemon. The properties of the builder get saved to the file given by the task.
+ *
+ * @author Samuel Audet
+ */
+public abstract class BuildWorker implements WorkAction<BuildWorker.Parameters> {
+    public interface Parameters extends WorkParameters {
+        Property<BuildOptions> getOptions();
+        RegularFileProperty getPropertiesFile();
+    }
+
+    @Override public void execute() {
+        Logger logger = new Slf4jLogger(Builder.class);
+        BuildOptions options = getParameters().getOptions().get();
+        File propertiesFile = getParameters().getPropertiesFile().get().getAsFile();
+        try {
+            BuildExecutor executor = options.createExecutor(logger);
+            executor.forked = true;
+            Builder builder = options.createBuilder(logger, null, executor);
+            BuildTask.storeProperties(builder.getProperties(), propertiesFile);
+
+            File[] outputFiles = builder.build();
+            options.copyFiles(logger, builder, outputFiles);
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("outputFiles: " + Arrays.deepToString(outputFiles));
+            }
+        } catch (Exception e) {
+            throw new GradleException("Could not build with JavaCPP: " + e, e);
+        }
+    }
+}
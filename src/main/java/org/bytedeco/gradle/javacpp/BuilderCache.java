@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacpp.tools.Builder;
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.api.services.BuildServiceSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A build service shared by all instances of {@link BuildTask} that caches the platform properties
+ * parsed from resources, as well as class loaders over the class paths given to {@link Builder}.
+ * The cache itself outlives builds, so it remains warm as long as the Gradle daemon is running, but
+ * the properties get loaded again as soon as their resource or the system properties overriding them change,
+ * and a class loader gets replaced as soon as the files on its class path change.
+ *
+ * @author Samuel Audet
+ */
+public abstract class BuilderCache implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BuilderCache.class);
+
+    /** The maximum number of class loaders to keep around. */
+    static final int MAX_CLASS_LOADERS = 32;
+
+    static class CachedProperties {
+        final Properties properties;
+        final long fingerprint;
+        CachedProperties(Properties properties, long fingerprint) {
+            this.properties = properties;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    static class CachedClassLoader {
+        final String[] paths;
+        final URLClassLoader loader;
+        final long fingerprint;
+        CachedClassLoader(String[] paths, URLClassLoader loader, long fingerprint) {
+            this.paths = paths;
+            this.loader = loader;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    static final Map<String, CachedProperties> properties = new LinkedHashMap<String, CachedProperties>();
+    static final Map<String, CachedClassLoader> classLoaders = new LinkedHashMap<String, CachedClassLoader>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, CachedClassLoader> eldest) {
+            if (size() > MAX_CLASS_LOADERS) {
+                close(eldest.getValue().loader);
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /** The keys of the class loaders used during the current build. */
+    final Set<String> used = new HashSet<String>();
+
+    /** Finds with this class loader the resources of platform properties, the same one as {@link Loader#loadProperties(String, String)}. */
+    ClassLoader resourceLoader = Loader.class.getClassLoader();
+
+    /** Registers the service with Gradle, which must be version 6.1 or newer. */
+    static Provider<BuilderCache> register(Project project) {
+        return project.getGradle().getSharedServices().registerIfAbsent("javacppBuilderCache", BuilderCache.class,
+                new Action<BuildServiceSpec<BuildServiceParameters.None>>() { public void execute(BuildServiceSpec<BuildServiceParameters.None> spec) { }});
+    }
+
+    static void close(URLClassLoader loader) {
+        try {
+            loader.close();
+        } catch (IOException e) {
+            logger.warn("Could not close class loader: " + e);
+        }
+    }
+
+    /**
+     * Returns a hash of the names, sizes, and modification times of the files found under the paths,
+     * where JAR files count as a single file, so only the directories of classes need to get listed.
+     */
+    static long fingerprint(String[] paths) {
+        long hash = 1;
+        for (String path : paths) {
+            hash = 31 * hash + fingerprint(new File(path));
+        }
+        return hash;
+    }
+    static long fingerprint(File file) {
+        long hash = file.getName().hashCode();
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                Arrays.sort(files);
+                for (File f : files) {
+                    hash = 31 * hash + fingerprint(f);
+                }
+            }
+        } else {
+            hash = 31 * hash + file.length();
+            hash = 31 * hash + file.lastModified();
+        }
+        return hash;
+    }
+
+    /**
+     * Returns a hash of the resource, along with the size and modification time of the file or JAR file containing it,
+     * and of the system properties starting with "org.bytedeco.javacpp.platform.", which override the ones of the resource.
+     */
+    static long fingerprint(URL resource) {
+        long hash = 1;
+        if (resource != null) {
+            hash = resource.toString().hashCode();
+            String path = resource.toString();
+            if (path.startsWith("jar:") && path.contains("!/")) {
+                path = path.substring(4, path.indexOf("!/"));
+            }
+            try {
+                hash = 31 * hash + fingerprint(new File(new URI(path)));
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                // not in a file, so assume it does not change
+            }
+        }
+        for (String key : new TreeSet<String>(System.getProperties().stringPropertyNames())) {
+            if (key.startsWith("org.bytedeco.javacpp.platform.")) {
+                hash = 31 * hash + (key + "=" + System.getProperty(key)).hashCode();
+            }
+        }
+        return hash;
+    }
+
+    /** Returns the resource of the properties for the platform, or of the "generic" ones when there is none, like {@link Loader}. */
+    URL getResource(String platform) {
+        URL resource = resourceLoader.getResource("org/bytedeco/javacpp/properties/" + platform + ".properties");
+        return resource != null ? resource : resourceLoader.getResource("org/bytedeco/javacpp/properties/generic.properties");
+    }
+
+    /**
+     * Returns the same as {@link Loader#loadProperties(String, String)}, but from the given resource,
+     * without letting the JVM cache the JAR file containing it, which may have changed since the last time.
+     */
+    static Properties loadProperties(String platform, URL resource) throws IOException {
+        Properties p = new Properties();
+        p.put("platform", platform);
+        p.put("platform.path.separator", File.pathSeparator);
+        String s = System.mapLibraryName("/");
+        int i = s.indexOf('/');
+        p.put("platform.library.prefix", s.substring(0, i));
+        p.put("platform.library.suffix", s.substring(i + 1));
+        if (resource != null) {
+            URLConnection connection = resource.openConnection();
+            connection.setUseCaches(false);
+            InputStream is = connection.getInputStream();
+            try {
+                p.load(new InputStreamReader(is));
+            } finally {
+                is.close();
+            }
+        }
+        for (Map.Entry<Object, Object> e : System.getProperties().entrySet()) {
+            if (e.getKey() instanceof String && e.getValue() instanceof String) {
+                String key = (String)e.getKey();
+                if (key.startsWith("org.bytedeco.javacpp.platform.")) {
+                    p.put(key.substring(key.indexOf("platform.")), e.getValue());
+                }
+            }
+        }
+        return p;
+    }
+
+    /** Returns a copy of the properties for the given platform, loading them again only when they changed. */
+    public Properties getProperties(String platform) throws IOException {
+        URL resource = getResource(platform);
+        String key = platform + " " + resource;
+        long fingerprint = fingerprint(resource);
+        CachedProperties cached;
+        synchronized (properties) {
+            cached = properties.get(key);
+            if (cached == null || cached.fingerprint != fingerprint) {
+                properties.put(key, cached = new CachedProperties(loadProperties(platform, resource), fingerprint));
+            }
+        }
+        Properties copy = new Properties();
+        copy.putAll(cached.properties);
+        return copy;
+    }
+
+    /** Same as {@link Builder#properties(String)}, but with properties from the cache. */
+    public Builder loadProperties(Builder builder, String platform) {
+        if (platform == null) {
+            return builder;
+        }
+        try {
+            Field field = Builder.class.getDeclaredField("properties");
+            field.setAccessible(true);
+            field.set(builder, getProperties(platform));
+            return builder;
+        } catch (ReflectiveOperationException | RuntimeException | IOException e) {
+            logger.warn("Could not set cached properties: " + e);
+            return builder.properties(platform);
+        }
+    }
+
+    /**
+     * Returns a class loader for the given paths, reusing the one from a previous call
+     * as long as the files on these paths have not changed since then.
+     */
+    public ClassLoader getClassLoader(String[] paths) throws IOException {
+        String key = Arrays.toString(paths);
+        long fingerprint = fingerprint(paths);
+        synchronized (classLoaders) {
+            used.add(key);
+            CachedClassLoader cached = classLoaders.get(key);
+            if (cached != null && cached.fingerprint == fingerprint) {
+                return cached.loader;
+            } else if (cached != null) {
+                close(cached.loader);
+            }
+            URL[] urls = new URL[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                urls[i] = new File(paths[i]).toURI().toURL();
+            }
+            URLClassLoader loader = new URLClassLoader(urls, BuilderCache.class.getClassLoader());
+            classLoaders.put(key, new CachedClassLoader(paths.clone(), loader, fingerprint));
+            return loader;
+        }
+    }
+
+    /**
+     * Releases at the end of the build the class loaders used during the build whose files changed since,
+     * since they will not be reused, while keeping the others warm for the next build.
+     */
+    @Override public void close() {
+        synchronized (classLoaders) {
+            Iterator<Map.Entry<String, CachedClassLoader>> it = classLoaders.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, CachedClassLoader> e = it.next();
+                if (used.contains(e.getKey()) && e.getValue().fingerprint != fingerprint(e.getValue().paths)) {
+                    close(e.getValue().loader);
+                    it.remove();
+                }
+            }
+            used.clear();
+        }
+    }
+}
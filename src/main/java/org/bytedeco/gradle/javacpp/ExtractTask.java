@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+
+/**
+ * A Gradle task that extracts native libraries found under "lib/" in JAR files into
+ * one subdirectory per ABI, as expected by the "jniLibs" source directories of Android.
+ * Only the archives that changed since the last execution get extracted again.
+ *
+ * @author Samuel Audet
+ */
+@CacheableTask
+public class ExtractTask extends DefaultTask {
+    /** Maps the names of Android platforms to their ABIs. */
+    static final String[][] ABIS = {{"android-arm",    "armeabi-v7a"},
+                                    {"android-arm64",  "arm64-v8a"},
+                                    {"android-x86",    "x86"},
+                                    {"android-x86_64", "x86_64"}};
+
+    /** Extract native libraries from these archives. */
+    FileCollection archives = null;
+
+    /** Extract only the libraries of these ABIs, or of all ABIs when empty. */
+    String[] abis = null;
+
+    /** Output libraries to subdirectories of outputDirectory named after their ABIs. */
+    File outputDirectory = null;
+
+    /** Keep in this file the list of libraries extracted from each archive, by absolute path, since archives from different groups often have the same name. */
+    File indexFile = null;
+
+    @Incremental @Classpath public FileCollection getArchives() { return archives; } public void setArchives(FileCollection f) { archives = f; }
+    @Optional @Input public String[] getAbis()                 { return abis;     } public void setAbis    (String[] s)       { abis     = s; }
+    @OutputDirectory public File getOutputDirectory() { return outputDirectory; } public void setOutputDirectory(File f) { outputDirectory = f; }
+    @OutputFile      public File getIndexFile()       { return indexFile;       } public void setIndexFile      (File f) { indexFile       = f; }
+
+    /** Returns the ABI of the given platform, or null if it is not a platform for Android. */
+    static String getAbi(String platform) {
+        for (String[] abi : ABIS) {
+            if (platform.startsWith(abi[0]) && (platform.length() == abi[0].length() || platform.charAt(abi[0].length()) == '-')) {
+                return abi[1];
+            }
+        }
+        return null;
+    }
+
+    @TaskAction public void extract(InputChanges inputChanges) throws IOException {
+        if (!inputChanges.isIncremental()) {
+            extract(getArchives().getFiles(), null, true);
+            return;
+        }
+        Set<File> changed = new LinkedHashSet<File>();
+        Set<File> removed = new LinkedHashSet<File>();
+        for (FileChange change : inputChanges.getFileChanges(getArchives())) {
+            if (change.getChangeType() != ChangeType.REMOVED) {
+                changed.add(change.getFile());
+            }
+            if (change.getChangeType() != ChangeType.ADDED) {
+                removed.add(change.getFile());
+            }
+        }
+        extract(changed, removed, false);
+    }
+
+    /**
+     * Deletes the libraries previously extracted from removed archives and extracts
+     * the ones from changed archives, or starts from scratch when not incremental.
+     */
+    void extract(Set<File> changed, Set<File> removed, boolean full) throws IOException {
+        Map<String, List<String>> index = full ? new TreeMap<String, List<String>>() : readIndex();
+        if (full) {
+            getProject().delete(getOutputDirectory());
+        }
+        Set<File> archives = new LinkedHashSet<File>(changed);
+        if (removed != null) {
+            for (File file : removed) {
+                List<String> entries = index.remove(file.getAbsolutePath());
+                if (entries == null) {
+                    continue;
+                }
+                for (String entry : entries) {
+                    String owner = null;
+                    for (Map.Entry<String, List<String>> e : index.entrySet()) {
+                        if (e.getValue().contains(entry)) {
+                            owner = e.getKey();
+                        }
+                    }
+                    if (owner == null) {
+                        getLogger().info("Deleting " + entry);
+                        new File(getOutputDirectory(), entry).delete();
+                    } else {
+                        // another archive contains the same library, so extract it again from there
+                        for (File f : getArchives().getFiles()) {
+                            if (f.getAbsolutePath().equals(owner)) {
+                                archives.add(f);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        List<String> selected = getAbis() != null ? Arrays.asList(getAbis()) : new ArrayList<String>();
+        for (File file : archives) {
+            if (!file.isFile()) {
+                continue;
+            }
+            List<String> entries = new ArrayList<String>();
+            ZipFile zip = new ZipFile(file);
+            try {
+                Enumeration<? extends ZipEntry> e = zip.entries();
+                while (e.hasMoreElements()) {
+                    ZipEntry entry = e.nextElement();
+                    String[] path = entry.getName().split("/");
+                    if (entry.isDirectory() || path.length != 3 || !path[0].equals("lib")
+                            || (selected.size() > 0 && !selected.contains(path[1]))) {
+                        continue;
+                    }
+                    String name = path[1] + "/" + path[2];
+                    File out = new File(getOutputDirectory(), name);
+                    out.getParentFile().mkdirs();
+                    getLogger().info("Extracting " + name + " from " + file.getName());
+                    InputStream is = zip.getInputStream(entry);
+                    try {
+                        Files.copy(is, out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    } finally {
+                        is.close();
+                    }
+                    entries.add(name);
+                }
+            } finally {
+                zip.close();
+            }
+            index.put(file.getAbsolutePath(), entries);
+        }
+        writeIndex(index);
+    }
+
+    Map<String, List<String>> readIndex() throws IOException {
+        Map<String, List<String>> index = new TreeMap<String, List<String>>();
+        if (getIndexFile().isFile()) {
+            BufferedReader reader = Files.newBufferedReader(getIndexFile().toPath(), StandardCharsets.UTF_8);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int i = line.indexOf('\t');
+                    if (i < 0) {
+                        index.put(line, new ArrayList<String>());
+                    } else {
+                        index.put(line.substring(0, i), new ArrayList<String>(Arrays.asList(line.substring(i + 1).split("\t"))));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return index;
+    }
+
+    void writeIndex(Map<String, List<String>> index) throws IOException {
+        getIndexFile().getParentFile().mkdirs();
+        BufferedWriter writer = Files.newBufferedWriter(getIndexFile().toPath(), StandardCharsets.UTF_8);
+        try {
+            for (Map.Entry<String, List<String>> e : index.entrySet()) {
+                writer.write(e.getKey());
+                for (String entry : e.getValue()) {
+                    writer.write("\t" + entry);
+                }
+                writer.write("\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
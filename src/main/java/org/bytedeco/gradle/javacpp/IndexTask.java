@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * A Gradle task that writes, in each directory containing native libraries, an index file named
+ * {@value #INDEX_NAME} listing all libraries in the order in which they need to be loaded, with
+ * their sizes and SHA-256 hashes. This way, the extraction cache can be checked against the index
+ * without reading the files, and only the libraries needed can be extracted. The lines of the index
+ * have the format {@code <name>\t<size>\t<sha256>}, and the output depends only on the libraries.
+ *
+ * @author Samuel Audet
+ */
+@CacheableTask
+public class IndexTask extends DefaultTask {
+    /** The name of the index files. */
+    public static final String INDEX_NAME = "javacpp.index";
+
+    /** Index the native libraries found in this tree. */
+    FileTree libraries = null;
+
+    /** Output the index files to the same relative paths in outputDirectory. */
+    File outputDirectory = null;
+
+    @InputFiles @PathSensitive(PathSensitivity.RELATIVE)
+                     public FileTree getLibraries()       { return libraries;       } public void setLibraries      (FileTree t) { libraries       = t; }
+    @OutputDirectory public File     getOutputDirectory() { return outputDirectory; } public void setOutputDirectory(File f)     { outputDirectory = f; }
+
+    /** Returns true if the file name looks like the one of a native library on any platform. */
+    static boolean isLibrary(String name) {
+        return name.matches(".+\\.(so(\\.[0-9]+)*|[0-9.]*dylib|dll|jnilib)");
+    }
+
+    @TaskAction public void index() throws IOException {
+        // group the libraries by directory, sorted to get the same output regardless of the file system
+        final Map<String, Map<String, File>> directories = new TreeMap<String, Map<String, File>>();
+        getLibraries().visit(new FileVisitor() {
+            @Override public void visitDir(FileVisitDetails details) { }
+            @Override public void visitFile(FileVisitDetails details) {
+                if (isLibrary(details.getName())) {
+                    String path = details.getRelativePath().getParent().getPathString();
+                    Map<String, File> files = directories.get(path);
+                    if (files == null) {
+                        directories.put(path, files = new TreeMap<String, File>());
+                    }
+                    files.put(details.getName(), details.getFile());
+                }
+            }
+        });
+
+        getProject().delete(getOutputDirectory());
+        for (Map.Entry<String, Map<String, File>> e : directories.entrySet()) {
+            File indexFile = new File(getOutputDirectory(), e.getKey() + "/" + INDEX_NAME);
+            indexFile.getParentFile().mkdirs();
+            getLogger().info("Writing " + indexFile);
+            writeIndex(indexFile, e.getValue());
+        }
+    }
+
+    /** Writes the index of the given libraries, ordered so that dependencies come before the libraries using them. */
+    static void writeIndex(File indexFile, Map<String, File> libraries) throws IOException {
+        Map<String, Set<String>> dependencies = new TreeMap<String, Set<String>>();
+        Map<String, String> hashes = new TreeMap<String, String>();
+        for (Map.Entry<String, File> e : libraries.entrySet()) {
+            Set<String> names = new LinkedHashSet<String>(libraries.keySet());
+            names.remove(e.getKey());
+            dependencies.put(e.getKey(), new LinkedHashSet<String>());
+            hashes.put(e.getKey(), scan(e.getValue(), names, dependencies.get(e.getKey())));
+        }
+
+        BufferedWriter writer = Files.newBufferedWriter(indexFile.toPath(), StandardCharsets.UTF_8);
+        try {
+            for (String name : sort(dependencies)) {
+                writer.write(name + "\t" + libraries.get(name).length() + "\t" + hashes.get(name) + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns the names of the libraries in load order, that is with their dependencies first,
+     * breaking ties and cycles in alphabetical order.
+     */
+    static List<String> sort(Map<String, Set<String>> dependencies) {
+        List<String> order = new ArrayList<String>();
+        Set<String> visiting = new LinkedHashSet<String>();
+        for (String name : dependencies.keySet()) {
+            visit(name, dependencies, visiting, order);
+        }
+        return order;
+    }
+    static void visit(String name, Map<String, Set<String>> dependencies, Set<String> visiting, List<String> order) {
+        if (order.contains(name) || !visiting.add(name)) {
+            return;
+        }
+        for (String dependency : new TreeSet<String>(dependencies.get(name))) {
+            visit(dependency, dependencies, visiting, order);
+        }
+        visiting.remove(name);
+        order.add(name);
+    }
+
+    /** Returns true if the name appears in the text, but not as part of a longer name. */
+    static boolean containsName(String text, String name) {
+        for (int i = text.indexOf(name); i >= 0; i = text.indexOf(name, i + 1)) {
+            int j = i + name.length();
+            if ((i == 0 || !isNameChar(text.charAt(i - 1))) && (j == text.length() || !isNameChar(text.charAt(j)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '.' || c == '_' || c == '-' || c == '+';
+    }
+
+    /**
+     * Returns the SHA-256 hash of the file, while adding to dependencies the names that appear in
+     * its content, as found in the import tables of ELF, Mach-O, and PE files, all in a single pass.
+     */
+    static String scan(File file, Set<String> names, Set<String> dependencies) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        int overlap = 0;
+        for (String name : names) {
+            // keep one more character to check that names are not part of longer ones
+            overlap = Math.max(overlap, name.length() + 1);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        String previous = "";
+        InputStream is = Files.newInputStream(file.toPath());
+        try {
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+                // ISO-8859-1 maps bytes to chars one to one, and file names are mostly ASCII
+                String chunk = previous + new String(buffer, 0, n, StandardCharsets.ISO_8859_1);
+                for (String name : names) {
+                    if (!dependencies.contains(name) && containsName(chunk, name)) {
+                        dependencies.add(name);
+                    }
+                }
+                previous = chunk.substring(Math.max(0, chunk.length() - overlap));
+            }
+        } finally {
+            is.close();
+        }
+        return String.format("%064x", new BigInteger(1, md.digest()));
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.bytedeco.javacpp.ClassProperties;
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacpp.tools.Builder;
+import org.bytedeco.javacpp.tools.Logger;
+
+/**
+ * Does what {@link Builder} does with its "copyLibs" and "copyResources" options, but after the build,
+ * skipping files that did not change, and in parallel, with the classes given instead of the ones of the builder.
+ *
+ * @author Samuel Audet
+ */
+class LibraryCopier {
+    final Logger logger;
+    final String outputName;
+
+    /** The files to copy, as output files mapped to input files. */
+    final Map<File, File> copies = new LinkedHashMap<File, File>();
+
+    LibraryCopier(Logger logger, String outputName) {
+        this.logger = logger;
+        this.outputName = outputName;
+    }
+
+    /** Finds the files to copy for the libraries and executables of the classes found in the output files, as the builder would. */
+    void plan(Properties properties, Collection<Class> classes, File[] outputFiles, boolean copyLibs, boolean copyResources) throws IOException {
+        if (outputFiles == null) {
+            return;
+        }
+        Map<String, LinkedHashSet<Class>> classMap = new LinkedHashMap<String, LinkedHashSet<Class>>();
+        for (Class c : classes) {
+            if (Loader.getEnclosingClass(c) != c) {
+                continue;
+            }
+            ClassProperties p = Loader.loadProperties(c, properties, false);
+            String target = p.getProperty("global");
+            if (p.isLoaded() && target != null && !c.getName().equals(target)) {
+                // only parsed, nothing to copy
+                continue;
+            }
+            if (!p.isLoaded()) {
+                p = Loader.loadProperties(c, properties, true);
+            }
+            if (!p.isLoaded()) {
+                continue;
+            }
+            List<String> names = new ArrayList<String>();
+            for (String executableName : p.get("platform.executable")) {
+                names.add(executableName.split("#")[0]);
+            }
+            if (names.isEmpty()) {
+                names.add(outputName != null ? outputName : p.getProperty("platform.library", ""));
+            }
+            for (String name : names) {
+                if (name.length() > 0) {
+                    if (!classMap.containsKey(name)) {
+                        classMap.put(name, new LinkedHashSet<Class>());
+                    }
+                    classMap.get(name).addAll(p.getEffectiveClasses());
+                }
+            }
+        }
+
+        List<File> outputs = Arrays.asList(outputFiles);
+        for (Map.Entry<String, LinkedHashSet<Class>> e : classMap.entrySet()) {
+            Class[] classArray = e.getValue().toArray(new Class[e.getValue().size()]);
+            ClassProperties p2 = Loader.loadProperties(classArray, properties, true);
+            String name = e.getKey();
+            List<String> filenames = Arrays.asList(
+                    p2.getProperty("platform.library.prefix", "") + name + p2.getProperty("platform.library.suffix", ""),
+                    p2.getProperty("platform.executable.prefix", "") + name + p2.getProperty("platform.executable.suffix", ""));
+            File directory = null;
+            for (File f : outputs) {
+                if (f != null && filenames.contains(f.getName())) {
+                    directory = f.getParentFile();
+                    break;
+                }
+            }
+            if (directory == null) {
+                continue;
+            }
+
+            // do not copy files from inherited properties, but use all the inherited paths
+            ClassProperties p = Loader.loadProperties(classArray, properties, false);
+            if (copyLibs) {
+                List<String> preloads = new ArrayList<String>();
+                preloads.addAll(p.get("platform.preload"));
+                preloads.addAll(p.get("platform.link"));
+                for (String s : preloads) {
+                    if (s.trim().endsWith("#") || s.trim().length() == 0) {
+                        // the user specified an empty destination to skip the copy
+                        continue;
+                    }
+                    File fi = findLibrary(p, s);
+                    if (fi == null) {
+                        fi = findLibrary(p2, s);
+                    }
+                    if (fi == null) {
+                        logger.warn("Could not find library " + s);
+                        continue;
+                    }
+                    File fo = new File(directory, fi.getName());
+                    if (fi.exists() && !outputs.contains(fo) && !copies.containsKey(fo)) {
+                        copies.put(fo, fi);
+                    }
+                }
+            }
+            if (copyResources) {
+                for (String resource : p.get("platform.resource")) {
+                    final Path target = directory.toPath().resolve(resource);
+                    Files.createDirectories(target);
+                    for (String path : p2.get("platform.resourcepath")) {
+                        final Path source = Paths.get(path, resource);
+                        if (Files.exists(source)) {
+                            Files.walkFileTree(source, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                                @Override public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                                    Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                                    return FileVisitResult.CONTINUE;
+                                }
+                                @Override public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                                    copies.put(target.resolve(source.relativize(file).toString()).toFile(), file.toFile());
+                                    return FileVisitResult.CONTINUE;
+                                }
+                            });
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns the file of the library found with the given properties, or null if not found. */
+    static File findLibrary(ClassProperties properties, String name) {
+        try {
+            URL[] urls = Loader.findLibrary(null, properties, name);
+            return new File(new URI(urls[0].toURI().toString().split("#")[0]));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** Copies the files found with {@link #plan}, using the given number of threads, and returns the number of files actually copied. */
+    int copy(int threads) throws IOException, InterruptedException {
+        if (copies.isEmpty()) {
+            return 0;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, copies.size())));
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            for (final Map.Entry<File, File> e : copies.entrySet()) {
+                futures.add(executor.submit(new Callable<Boolean>() { public Boolean call() throws IOException {
+                    if (isUpToDate(e.getValue(), e.getKey())) {
+                        logger.debug("Skipping " + e.getValue());
+                        return false;
+                    }
+                    logger.info("Copying " + e.getValue());
+                    copy(e.getValue(), e.getKey());
+                    return true;
+                }}));
+            }
+            int copied = 0;
+            for (Future<Boolean> f : futures) {
+                try {
+                    copied += f.get() ? 1 : 0;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException)e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+            return copied;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Returns true if the output file exists with the same size and either the same modification time or content as the input file. */
+    static boolean isUpToDate(File in, File out) throws IOException {
+        if (!out.isFile() || out.length() != in.length()) {
+            return false;
+        }
+        return out.lastModified() == in.lastModified() || Arrays.equals(hash(in), hash(out));
+    }
+
+    static byte[] hash(File file) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        InputStream is = Files.newInputStream(file.toPath());
+        try {
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+        } finally {
+            is.close();
+        }
+        return md.digest();
+    }
+
+    /**
+     * Copies the input file to a temporary file next to the output file, keeping its modification time, and moves it
+     * atomically over the output file, which never shares its content with the input file, unlike with hard links.
+     */
+    static void copy(File in, File out) throws IOException {
+        out.getParentFile().mkdirs();
+        File temp = File.createTempFile(out.getName(), ".tmp", out.getParentFile());
+        try {
+            Files.copy(in.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            Files.move(temp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+}
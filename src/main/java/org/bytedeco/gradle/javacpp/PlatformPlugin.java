@@ -21,37 +21,236 @@
  */
 package org.bytedeco.gradle.javacpp;
 
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 import org.bytedeco.javacpp.Loader;
 import org.gradle.api.Action;
 import org.gradle.api.ActionConfiguration;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ResolvableDependencies;
+import org.gradle.api.artifacts.result.ResolvedComponentResult;
+import org.gradle.api.artifacts.result.ResolvedVariantResult;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.plugins.AppliedPlugin;
+import org.gradle.api.specs.Spec;
 
 /**
  * This plugin selects from existing artifacts the ones corresponding to user-specified platforms.
  * It defines the following extra property:
  * <p><ul>
- * <li>"javacppPlatform", a comma-separated list, which defaults to {@link Loader#getPlatform()};
+ * <li>"javacppPlatform", a comma-separated list, which defaults to the value of {@link PlatformSettingsPlugin}
+ *     when applied to the settings, or else to {@link Loader#getPlatform()};
  * </ul><p>
  *
- * and adds the following rule:
+ * reads the following optional properties, for example with {@code ext['javacppPlatform.testRuntimeClasspath']}:
  * <p><ul>
- * <li>{@link PlatformRule} that removes any platform dependencies not in "javacppPlatform".
+ * <li>"javacppPlatform.&lt;configuration&gt;", a comma-separated list that replaces "javacppPlatform" for that configuration,
+ *     by requesting it with {@link #PLATFORM_ATTRIBUTE}, while the other configurations that only get resolved request "javacppPlatform";
  * </ul><p>
-
+ *
+ * adds the following rule, unless already added with the same platforms by {@link PlatformSettingsPlugin}:
+ * <p><ul>
+ * <li>{@link PlatformRule} that removes any platform dependencies not in "javacppPlatform",
+ *     or not in the list requested by configurations for their own variant.
+ * </ul><p>
+ *
+ * creates the following task:
+ * <p><ul>
+ * <li>"javacppReport", a {@link ReportTask} for the "runtimeClasspath" configurations, failing over "javacppPayloadBudget" bytes if set,
+ * </ul><p>
+ *
+ * and for Android applications and libraries, creates the following configuration:
+ * <p><ul>
+ * <li>"javacpp", to be used to specify "-platform" dependencies whose native libraries get extracted,
+ * </ul><p>
+ *
+ * as well as the following task:
+ * <p><ul>
+ * <li>"javacppExtract", an {@link ExtractTask} that outputs to the "jniLibs" of the main source set.
+ * </ul><p>
+ *
  * @author Samuel Audet
  */
 public class PlatformPlugin implements Plugin<Project> {
-    @Override public void apply(Project project) {
+    /** The attribute with the comma-separated list of platforms selected by a configuration. */
+    public static final Attribute<String> PLATFORM_ATTRIBUTE = Attribute.of("org.bytedeco.javacpp.platform", String.class);
+
+    @Override public void apply(final Project project) {
+        final String settingsPlatform = PlatformSettingsPlugin.getPlatform(project.getGradle());
         if (!project.hasProperty("javacppPlatform")) {
-            project.getExtensions().getExtraProperties().set("javacppPlatform", Loader.Detector.getPlatform());
+            project.getExtensions().getExtraProperties().set("javacppPlatform",
+                    settingsPlatform != null ? settingsPlatform : Loader.Detector.getPlatform());
         }
 
         project.afterEvaluate(new Action<Project>() { public void execute(final Project p) {
+            final ArrayList<String> selections = new ArrayList<String>();
+            for (Configuration c : p.getConfigurations()) {
+                Object value = p.findProperty("javacppPlatform." + c.getName());
+                if (value != null) {
+                    String selection = PlatformSettingsPlugin.normalize(value.toString());
+                    if (!selections.contains(selection)) {
+                        selections.add(selection);
+                    }
+                }
+            }
+            if (!selections.isEmpty()) {
+                // let the other configurations that only get resolved select the default platforms
+                final String selection = PlatformSettingsPlugin.normalize(p.findProperty("javacppPlatform").toString());
+                if (!selections.contains(selection)) {
+                    selections.add(selection);
+                }
+                p.getDependencies().getAttributesSchema().attribute(PLATFORM_ATTRIBUTE);
+                // including the configurations created later on, for example by plugins applied after this one
+                p.getConfigurations().all(new Action<Configuration>() { public void execute(Configuration c) {
+                    selectPlatform(p, c, selections, selection);
+                }});
+            }
+
+            Object platform = p.findProperty("javacppPlatform");
+            if (settingsPlatform != null && platform != null && selections.isEmpty()
+                    && settingsPlatform.equals(PlatformSettingsPlugin.normalize(platform.toString()))) {
+                // already selected for the whole build by PlatformSettingsPlugin
+                return;
+            }
             p.getDependencies().getComponents().all(PlatformRule.class,
                     new Action<ActionConfiguration>() { public void execute(ActionConfiguration rule) {
-                rule.setParams(p.findProperty("javacppPlatform"));
+                rule.setParams(p.findProperty("javacppPlatform"), selections);
             }});
         }});
+
+        project.getTasks().register("javacppReport", ReportTask.class, new Action<ReportTask>() { public void execute(ReportTask task) {
+            List<String> names = new ArrayList<String>();
+            for (Configuration c : project.getConfigurations()) {
+                if (c.isCanBeResolved() && (c.getName().equals("runtimeClasspath") || c.getName().endsWith("RuntimeClasspath"))) {
+                    names.add(c.getName());
+                }
+            }
+            Object budget = project.findProperty("javacppPayloadBudget");
+            task.setGroup("reporting");
+            task.setDescription("Reports the size of native artifacts selected from \"-platform\" dependencies.");
+            task.configurationNames = names.toArray(new String[names.size()]);
+            task.budget = budget != null ? Long.valueOf(budget.toString()) : null;
+            task.outputDirectory = new File(project.getBuildDir(), "reports/javacpp");
+            // the resolved artifacts are not tracked as inputs
+            task.getOutputs().upToDateWhen(new Spec<Task>() { public boolean isSatisfiedBy(Task t) { return false; }});
+        }});
+
+        Action<AppliedPlugin> android = new Action<AppliedPlugin>() { public void execute(AppliedPlugin plugin) {
+            configureAndroid(project);
+        }};
+        project.getPluginManager().withPlugin("com.android.application", android);
+        project.getPluginManager().withPlugin("com.android.library", android);
+    }
+
+    /**
+     * Requests with {@link #PLATFORM_ATTRIBUTE} the platforms selected for the configuration, or the default ones when it only gets resolved,
+     * and warns after resolution about "-platform" modules for which {@link PlatformRule} could not add a variant with that attribute.
+     */
+    static void selectPlatform(final Project project, final Configuration configuration, List<String> selections, final String defaultSelection) {
+        Object value = project.findProperty("javacppPlatform." + configuration.getName());
+        if (value != null) {
+            String selection = PlatformSettingsPlugin.normalize(value.toString());
+            if (!selections.contains(selection)) {
+                project.getLogger().warn("Could not select platforms " + selection + " for configuration " + configuration.getName()
+                        + ": Set \"javacppPlatform." + configuration.getName() + "\" before the project gets evaluated");
+                return;
+            }
+            configuration.getAttributes().attribute(PLATFORM_ATTRIBUTE, selection);
+        } else if (isOnlyResolved(configuration)) {
+            configuration.getAttributes().attribute(PLATFORM_ATTRIBUTE, defaultSelection);
+        }
+        configuration.getIncoming().beforeResolve(new Action<ResolvableDependencies>() { public void execute(ResolvableDependencies dependencies) {
+            // the roles of configurations created after evaluation usually get set only after they get added to the container
+            if (isOnlyResolved(configuration)) {
+                configuration.getAttributes().attribute(PLATFORM_ATTRIBUTE, defaultSelection);
+            }
+        }});
+        configuration.getIncoming().afterResolve(new Action<ResolvableDependencies>() { public void execute(ResolvableDependencies dependencies) {
+            String selection = configuration.getAttributes().getAttribute(PLATFORM_ATTRIBUTE);
+            if (selection == null) {
+                return;
+            }
+            for (String id : getUnselectedModules(dependencies.getResolutionResult().getAllComponents())) {
+                project.getLogger().warn("Could not select platforms " + selection + " of " + id + " for configuration " + configuration.getName()
+                        + ": No variant named " + Arrays.toString(PlatformRule.RUNTIME_VARIANTS) + " found, keeping the platforms of all configurations");
+            }
+        }});
+    }
+
+    /** Returns true if the configuration only gets resolved, and requests no platforms yet. */
+    static boolean isOnlyResolved(Configuration configuration) {
+        return configuration.isCanBeResolved() && !configuration.isCanBeConsumed() && !configuration.getAttributes().contains(PLATFORM_ATTRIBUTE);
+    }
+
+    /** Returns the "-platform" modules resolved with variants that do not have {@link #PLATFORM_ATTRIBUTE}. */
+    static List<String> getUnselectedModules(Set<ResolvedComponentResult> components) {
+        List<String> ids = new ArrayList<String>();
+        for (ResolvedComponentResult component : components) {
+            if (component.getModuleVersion() == null || !component.getModuleVersion().getName().contains("-platform")) {
+                continue;
+            }
+            boolean selected = false;
+            try {
+                // This is not available with old versions of Gradle
+                for (ResolvedVariantResult variant : component.getVariants()) {
+                    for (Attribute<?> attribute : variant.getAttributes().keySet()) {
+                        selected |= attribute.getName().equals(PLATFORM_ATTRIBUTE.getName());
+                    }
+                }
+            } catch (NoSuchMethodError e) {
+                selected = true;
+            }
+            if (!selected) {
+                ids.add(component.getId().getDisplayName());
+            }
+        }
+        return ids;
+    }
+
+    /** Extracts the native libraries of the "javacpp" configuration so that Android packages them like its own. */
+    void configureAndroid(final Project project) {
+        if (project.getTasks().findByName("javacppExtract") != null) {
+            return;
+        }
+        final Configuration configuration = project.getConfigurations().maybeCreate("javacpp");
+        final File outputDirectory = new File(project.getBuildDir(), "javacpp/lib");
+        project.getTasks().register("javacppExtract",
+                ExtractTask.class, new Action<ExtractTask>() { public void execute(ExtractTask task) {
+            List<String> abis = new ArrayList<String>();
+            for (String platform : ((String)project.findProperty("javacppPlatform")).split(",")) {
+                String abi = ExtractTask.getAbi(platform.trim());
+                if (abi != null && !abis.contains(abi)) {
+                    abis.add(abi);
+                }
+            }
+            task.archives = configuration;
+            task.abis = abis.toArray(new String[abis.size()]);
+            task.outputDirectory = outputDirectory;
+            task.indexFile = new File(project.getBuildDir(), "javacpp/extract.index");
+        }});
+        project.getTasks().matching(new Spec<Task>() { public boolean isSatisfiedBy(Task task) {
+            return task.getName().equals("preBuild");
+        }}).configureEach(new Action<Task>() { public void execute(Task task) {
+            task.dependsOn("javacppExtract");
+        }});
+
+        // call android.sourceSets.main.jniLibs.srcDir() without depending on the Android Gradle Plugin
+        try {
+            Object android = project.getExtensions().getByName("android");
+            Object sourceSets = android.getClass().getMethod("getSourceSets").invoke(android);
+            Object main = sourceSets.getClass().getMethod("getByName", String.class).invoke(sourceSets, "main");
+            Object jniLibs = main.getClass().getMethod("getJniLibs").invoke(main);
+            Method srcDir = jniLibs.getClass().getMethod("srcDir", Object.class);
+            srcDir.invoke(jniLibs, outputDirectory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            project.getLogger().warn("Could not add " + outputDirectory + " to jniLibs: " + e);
+        }
     }
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.DependencyArtifact;
+import org.gradle.api.artifacts.LenientConfiguration;
+import org.gradle.api.artifacts.ModuleDependency;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.ResolvedDependency;
+import org.gradle.api.artifacts.UnresolvedDependency;
+import org.gradle.api.internal.project.DefaultProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An immutable model of the first-level dependencies of a configuration like "javacppPlatform",
+ * with their artifacts, classifiers, and files, obtained with a single lenient resolution of a detached copy.
+ * Dependencies on the module of the project itself get resolved from repositories, instead of
+ * to the project without files, and the ones that cannot be resolved are still listed with the
+ * classifiers of their declared artifacts, but without files.
+ *
+ * @author Samuel Audet
+ */
+public class PlatformResolution {
+    private static final Logger logger = LoggerFactory.getLogger(PlatformResolution.class);
+
+    /** An artifact of a module, with a null file when it could not be downloaded. */
+    public static final class Artifact {
+        final String classifier;
+        final File file;
+        Artifact(String classifier, File file) {
+            this.classifier = classifier;
+            this.file = file;
+        }
+        public String getClassifier() { return classifier; }
+        public File getFile() { return file; }
+    }
+
+    /** A first-level dependency with its artifacts. */
+    public static final class Module {
+        final String group, name, version;
+        final List<Artifact> artifacts;
+        Module(String group, String name, String version, List<Artifact> artifacts) {
+            this.group = group;
+            this.name = name;
+            this.version = version;
+            this.artifacts = Collections.unmodifiableList(artifacts);
+        }
+        public String getGroup() { return group; }
+        public String getName() { return name; }
+        public String getVersion() { return version; }
+        public List<Artifact> getArtifacts() { return artifacts; }
+    }
+
+    final List<Module> modules;
+
+    PlatformResolution(List<Module> modules) {
+        this.modules = Collections.unmodifiableList(modules);
+    }
+
+    public List<Module> getModules() { return modules; }
+
+    /**
+     * Resolves the dependencies of the configuration, which should be done only once, so callers should keep the result.
+     * This is done with a detached copy of the configuration, without modifying the project or the configuration itself,
+     * unless this version of Gradle uses the module of our project as root of detached configurations, in which case dependencies on
+     * its own module would not resolve to files, and we need to rename the project temporarily to resolve the original.
+     * Since other projects may read that name concurrently, this is not done with parallel execution, where artifacts of
+     * the module of our project then come without files, so publishing them in parallel is unsupported with such versions.
+     */
+    static PlatformResolution resolve(Project project, Configuration configuration) {
+        Configuration detached = project.getConfigurations().detachedConfiguration(
+                configuration.getAllDependencies().toArray(new Dependency[0]));
+        try {
+            ModuleVersionIdentifier root = detached.getIncoming().getResolutionResult().getRoot().getModuleVersion();
+            if (root == null || !root.getName().equals(project.getName()) || !root.getGroup().equals(String.valueOf(project.getGroup()))) {
+                return new PlatformResolution(getModules(configuration, detached));
+            }
+            if (project.getGradle().getStartParameter().isParallelProjectExecutionEnabled()) {
+                logger.warn("Could not resolve artifacts of " + root + " with parallel execution: Disable it with --no-parallel to publish them");
+                return new PlatformResolution(getModules(configuration, detached));
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Could not resolve detached configuration: " + e);
+        }
+        return resolveRenamed(project, configuration);
+    }
+
+    /** Resolves the configuration while our project is renamed, to prevent Gradle from resolving artifacts to it, without files. */
+    static synchronized PlatformResolution resolveRenamed(Project project, Configuration configuration) {
+        Field nameField = null;
+        String name = project.getName();
+        try {
+            nameField = DefaultProject.class.getDeclaredField("name");
+            nameField.setAccessible(true);
+            nameField.set(project, name + "-renamed");
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Could not rename project: " + e);
+            nameField = null;
+        }
+        try {
+            return new PlatformResolution(getModules(configuration, configuration));
+        } finally {
+            if (nameField != null) {
+                try {
+                    nameField.set(project, name);
+                } catch (ReflectiveOperationException e) {
+                    logger.warn("Could not restore project name: " + e);
+                }
+            }
+        }
+    }
+
+    /** Returns the modules resolved leniently with the resolved configuration, adding the unresolved ones with the artifacts declared in the other one. */
+    static List<Module> getModules(Configuration declared, Configuration resolved) {
+        List<Module> modules = new ArrayList<Module>();
+        LenientConfiguration lenient = resolved.getResolvedConfiguration().getLenientConfiguration();
+        for (ResolvedDependency rd : lenient.getFirstLevelModuleDependencies()) {
+            List<Artifact> artifacts = new ArrayList<Artifact>();
+            for (ResolvedArtifact ra : rd.getModuleArtifacts()) {
+                File file = null;
+                try {
+                    file = ra.getFile();
+                } catch (RuntimeException e) {
+                    // probably ArtifactNotFoundException -> keep without file
+                }
+                artifacts.add(new Artifact(ra.getClassifier(), file));
+            }
+            modules.add(new Module(rd.getModuleGroup(), rd.getModuleName(), rd.getModuleVersion(), artifacts));
+        }
+        for (UnresolvedDependency ud : lenient.getUnresolvedModuleDependencies()) {
+            String group = ud.getSelector().getGroup();
+            String module = ud.getSelector().getName();
+            String version = ud.getSelector().getVersion();
+            List<Artifact> artifacts = new ArrayList<Artifact>();
+            for (Dependency d : declared.getAllDependencies()) {
+                if (d instanceof ModuleDependency && module.equals(d.getName()) && group.equals(d.getGroup())) {
+                    for (DependencyArtifact da : ((ModuleDependency)d).getArtifacts()) {
+                        artifacts.add(new Artifact(da.getClassifier(), null));
+                    }
+                }
+            }
+            if (artifacts.isEmpty()) {
+                artifacts.add(new Artifact(null, null));
+            }
+            modules.add(new Module(group, module, version, artifacts));
+        }
+        return modules;
+    }
+}
@@ -22,7 +22,9 @@
 package org.bytedeco.gradle.javacpp;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.function.Predicate;
@@ -34,6 +36,7 @@ import org.gradle.api.artifacts.ComponentMetadataRule;
 import org.gradle.api.artifacts.DirectDependencyMetadata;
 import org.gradle.api.artifacts.DirectDependenciesMetadata;
 import org.gradle.api.artifacts.VariantMetadata;
+import org.gradle.api.attributes.AttributeContainer;
 import org.gradle.api.internal.artifacts.repositories.resolver.AbstractDependencyMetadataAdapter;
 import org.gradle.internal.component.external.model.ConfigurationBoundExternalDependencyMetadata;
 import org.gradle.internal.component.external.model.ExternalDependencyDescriptor;
@@ -46,17 +49,29 @@ import org.slf4j.LoggerFactory;
  * A rule that looks at dependencies of artifacts containing "-platform" in their names, and
  * removes any dependency whose classifier doesn't start with values in the "javacppPlatform" property,
  * which allows matches against platform extensions such as "-gpu" without specifying them.
+ * When lists of platforms get selected for configurations with {@link PlatformPlugin#PLATFORM_ATTRIBUTE}, it keeps
+ * instead the ones in any of these lists, and adds for each list a variant based on the Java runtime variant of the module
+ * with that attribute, keeping only the dependencies of that list. That variant is named "runtime" for Maven modules,
+ * and "runtimeElements" for modules published by Gradle, but other names go unnoticed until {@link PlatformPlugin} warns about them.
  *
  * @author Samuel Audet
  */
 class PlatformRule implements ComponentMetadataRule {
     private final Logger logger = LoggerFactory.getLogger(PlatformRule.class);
 
+    /** The names of the Java runtime variants, derived from POM files, and as published in Gradle Module Metadata. */
+    static final String[] RUNTIME_VARIANTS = {"runtime", "runtimeElements"};
+
     final List<String> platform;
+    final List<String> selections;
 
-    /** Takes a comma-separated list of platform names to keep. */
-    @Inject public PlatformRule(String platform) {
-        this.platform = Arrays.asList(platform.split(","));
+    /** Takes a comma-separated list of platform names to keep, and the lists selected by configurations, if any. */
+    @Inject public PlatformRule(String platform, List<String> selections) {
+        this.platform = new ArrayList<String>(Arrays.asList(platform.split(",")));
+        this.selections = selections != null ? selections : Collections.<String>emptyList();
+        for (String selection : this.selections) {
+            this.platform.addAll(Arrays.asList(selection.split(",")));
+        }
     }
 
     @Override public void execute(ComponentMetadataContext context) {
@@ -64,48 +79,72 @@ class PlatformRule implements ComponentMetadataRule {
         if (!component.getId().getName().contains("-platform")) {
             return;
         }
+        for (int n = 0; n < selections.size(); n++) {
+            final String selection = selections.get(n);
+            Action<VariantMetadata> action = new Action<VariantMetadata>() { public void execute(VariantMetadata variant) {
+                variant.attributes(new Action<AttributeContainer>() { public void execute(AttributeContainer attributes) {
+                    attributes.attribute(PlatformPlugin.PLATFORM_ATTRIBUTE, selection);
+                }});
+                variant.withDependencies(new Action<DirectDependenciesMetadata>() { public void execute(DirectDependenciesMetadata dependencies) {
+                    removeDependencies(dependencies, Arrays.asList(selection.split(",")));
+                }});
+            }};
+            try {
+                // This only works starting with Gradle 6.4, and does nothing for the names of variants the module does not have
+                for (String base : RUNTIME_VARIANTS) {
+                    component.maybeAddVariant("javacpp" + Character.toUpperCase(base.charAt(0)) + base.substring(1) + n, base, action);
+                }
+            } catch (NoSuchMethodError e) {
+                logger.warn("Could not add variant for " + selection + " to " + component.getId() + ": " + e);
+            }
+        }
         component.allVariants(new Action<VariantMetadata>() { public void execute(VariantMetadata variant) {
             variant.withDependencies(new Action<DirectDependenciesMetadata>() { public void execute(DirectDependenciesMetadata dependencies) {
-                Iterator<DirectDependencyMetadata> i = dependencies.iterator();
-                while (i.hasNext()) {
-                    DirectDependencyMetadata d = i.next();
-                    String classifier = null;
-                    try {
-                        // This only works starting with Gradle 6.3:
-                        List<org.gradle.api.artifacts.DependencyArtifact> as = d.getArtifactSelectors();
-                        if (as != null && as.size() > 0) {
-                            classifier = as.get(0).getClassifier();
-                        }
-                    } catch (NoSuchMethodError ex) {
-                        // So try to get the classifier some other way...
-                        try {
-                            if (d instanceof AbstractDependencyMetadataAdapter) {
-                                Method getMetadata = AbstractDependencyMetadataAdapter.class.getDeclaredMethod("getOriginalMetadata");
-                                getMetadata.setAccessible(true);
-                                Object o = getMetadata.invoke(d);
-                                if (o instanceof ConfigurationBoundExternalDependencyMetadata) {
-                                    ConfigurationBoundExternalDependencyMetadata m = (ConfigurationBoundExternalDependencyMetadata)o;
-                                    ExternalDependencyDescriptor dd = m.getDependencyDescriptor();
-                                    if (dd instanceof MavenDependencyDescriptor) {
-                                        MavenDependencyDescriptor mdd = (MavenDependencyDescriptor)dd;
-                                        IvyArtifactName da = mdd.getDependencyArtifact();
-                                        if (da != null) {
-                                            classifier = da.getClassifier();
-                                        }
-                                    }
+                removeDependencies(dependencies, platform);
+            }});
+        }});
+    }
+
+    /** Removes from the dependencies the ones with a classifier that does not start with any of the platforms. */
+    void removeDependencies(DirectDependenciesMetadata dependencies, List<String> platform) {
+        Iterator<DirectDependencyMetadata> i = dependencies.iterator();
+        while (i.hasNext()) {
+            DirectDependencyMetadata d = i.next();
+            String classifier = null;
+            try {
+                // This only works starting with Gradle 6.3:
+                List<org.gradle.api.artifacts.DependencyArtifact> as = d.getArtifactSelectors();
+                if (as != null && as.size() > 0) {
+                    classifier = as.get(0).getClassifier();
+                }
+            } catch (NoSuchMethodError ex) {
+                // So try to get the classifier some other way...
+                try {
+                    if (d instanceof AbstractDependencyMetadataAdapter) {
+                        Method getMetadata = AbstractDependencyMetadataAdapter.class.getDeclaredMethod("getOriginalMetadata");
+                        getMetadata.setAccessible(true);
+                        Object o = getMetadata.invoke(d);
+                        if (o instanceof ConfigurationBoundExternalDependencyMetadata) {
+                            ConfigurationBoundExternalDependencyMetadata m = (ConfigurationBoundExternalDependencyMetadata)o;
+                            ExternalDependencyDescriptor dd = m.getDependencyDescriptor();
+                            if (dd instanceof MavenDependencyDescriptor) {
+                                MavenDependencyDescriptor mdd = (MavenDependencyDescriptor)dd;
+                                IvyArtifactName da = mdd.getDependencyArtifact();
+                                if (da != null) {
+                                    classifier = da.getClassifier();
                                 }
                             }
-                        } catch (ReflectiveOperationException e) {
-                            logger.warn("Could not get the classifier of " + d + ": " + e);
                         }
                     }
-                    final String c = classifier;
-                    if (classifier != null && platform.stream()
-                            .filter(new Predicate<String>() { public boolean test(String p) { return c.startsWith(p); }}).count() == 0) {
-                        i.remove();
-                    }
+                } catch (ReflectiveOperationException e) {
+                    logger.warn("Could not get the classifier of " + d + ": " + e);
                 }
-            }});
-        }});
+            }
+            final String c = classifier;
+            if (classifier != null && platform.stream()
+                    .filter(new Predicate<String>() { public boolean test(String p) { return c.startsWith(p); }}).count() == 0) {
+                i.remove();
+            }
+        }
     }
 }
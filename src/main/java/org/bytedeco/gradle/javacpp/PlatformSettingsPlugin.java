@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.bytedeco.javacpp.Loader;
+import org.gradle.api.Action;
+import org.gradle.api.ActionConfiguration;
+import org.gradle.api.GradleException;
+import org.gradle.api.Plugin;
+import org.gradle.api.artifacts.dsl.ComponentMetadataHandler;
+import org.gradle.api.initialization.Settings;
+import org.gradle.api.initialization.resolve.DependencyResolutionManagement;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.plugins.ExtraPropertiesExtension;
+import org.gradle.util.GradleVersion;
+
+/**
+ * This plugin, applied to settings, selects for all projects of the build the artifacts corresponding
+ * to user-specified platforms, with Gradle 6.8 or newer. It reads the following property, either from an
+ * extra property of the settings, or from a Gradle property:
+ * <p><ul>
+ * <li>"javacppPlatform", a comma-separated list, which defaults to {@link Loader#getPlatform()};
+ * </ul><p>
+ *
+ * and adds once, with "dependencyResolutionManagement", the following rule:
+ * <p><ul>
+ * <li>{@link PlatformRule} that removes any platform dependencies not in "javacppPlatform".
+ * </ul><p>
+ *
+ * {@link PlatformPlugin} then defaults "javacppPlatform" of projects to the same value, without adding
+ * its own rule unless a project sets a different value, in which case its rule overrides this one,
+ * as per the default "rulesMode" of Gradle.
+ *
+ * @author Samuel Audet
+ */
+public class PlatformSettingsPlugin implements Plugin<Settings> {
+    /** The name of the extra property of {@link Gradle} holding the platforms selected for the whole build. */
+    static final String PLATFORM_PROPERTY = "javacppSettingsPlatform";
+
+    /** Returns the platforms selected by this plugin for the whole build, or null if it was not applied. */
+    static String getPlatform(Gradle gradle) {
+        ExtraPropertiesExtension ext = gradle.getExtensions().getExtraProperties();
+        return ext.has(PLATFORM_PROPERTY) ? (String)ext.get(PLATFORM_PROPERTY) : null;
+    }
+
+    /** Returns the comma-separated list of platforms trimmed and without empty values or duplicates. */
+    static String normalize(String platform) {
+        List<String> platforms = new ArrayList<String>();
+        for (String p : platform.split(",")) {
+            if (p.trim().length() > 0 && !platforms.contains(p.trim())) {
+                platforms.add(p.trim());
+            }
+        }
+        StringBuilder s = new StringBuilder();
+        for (String p : platforms) {
+            s.append(s.length() > 0 ? "," : "").append(p);
+        }
+        return s.toString();
+    }
+
+    @Override public void apply(final Settings settings) {
+        if (GradleVersion.current().compareTo(GradleVersion.version("6.8")) < 0) {
+            throw new GradleException("The settings plugin of JavaCPP requires Gradle 6.8 or newer, apply the platform plugin to projects instead");
+        }
+        // wait for the settings script to have set its extra properties
+        settings.getGradle().settingsEvaluated(new Action<Settings>() { public void execute(Settings s) {
+            ExtraPropertiesExtension ext = s.getExtensions().getExtraProperties();
+            Object value = ext.has("javacppPlatform") ? ext.get("javacppPlatform")
+                    : s.getProviders().gradleProperty("javacppPlatform").getOrNull();
+            final String platform = normalize(value != null ? value.toString() : Loader.Detector.getPlatform());
+            s.getGradle().getExtensions().getExtraProperties().set(PLATFORM_PROPERTY, platform);
+            s.dependencyResolutionManagement(new Action<DependencyResolutionManagement>() { public void execute(DependencyResolutionManagement m) {
+                m.components(new Action<ComponentMetadataHandler>() { public void execute(ComponentMetadataHandler components) {
+                    components.all(PlatformRule.class, new Action<ActionConfiguration>() { public void execute(ActionConfiguration rule) {
+                        rule.setParams(platform, new ArrayList<String>());
+                    }});
+                }});
+            }});
+        }});
+    }
+}
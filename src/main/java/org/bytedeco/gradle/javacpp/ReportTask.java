@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.ResolvedDependency;
+import org.gradle.api.artifacts.result.ArtifactResult;
+import org.gradle.api.artifacts.result.ComponentArtifactsResult;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.component.Artifact;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.maven.MavenModule;
+import org.gradle.maven.MavenPomArtifact;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A Gradle task that reports, for each configuration, the artifacts with a classifier that the dependencies
+ * of "-platform" modules resolve to, or that {@link PlatformRule} removed from them, with their sizes and totals.
+ * The report gets written to {@value #JSON_NAME} and {@value #HTML_NAME} in the output directory, and the task
+ * fails when the total size of the artifacts kept in any configuration goes over the budget, if any.
+ *
+ * @author Samuel Audet
+ */
+public class ReportTask extends DefaultTask {
+    /** The names of the files of the report. */
+    public static final String JSON_NAME = "payload.json", HTML_NAME = "payload.html";
+
+    /** An artifact of a dependency of a "-platform" module, with a negative size when it was removed. */
+    static final class Entry {
+        final String module, artifact, classifier;
+        final long size;
+        Entry(String module, String artifact, String classifier, long size) {
+            this.module = module;
+            this.artifact = artifact;
+            this.classifier = classifier;
+            this.size = size;
+        }
+        boolean isKept() { return size >= 0; }
+    }
+
+    /** Report the artifacts resolved in the configurations with these names, skipping the ones that do not exist. */
+    String[] configurationNames = null;
+
+    /** Fail when the artifacts kept in a configuration add up to more than this number of bytes, if not null. */
+    Long budget = null;
+
+    /** Output the report files to this directory. */
+    File outputDirectory = null;
+
+    @Input           public String[] getConfigurationNames() { return configurationNames; } public void setConfigurationNames(String[] s) { configurationNames = s; }
+    @Optional @Input public Long     getBudget()             { return budget;             } public void setBudget            (Long l)     { budget             = l; }
+    @OutputDirectory public File     getOutputDirectory()    { return outputDirectory;    } public void setOutputDirectory   (File f)     { outputDirectory    = f; }
+
+    @TaskAction public void report() throws IOException {
+        Map<String, List<Entry>> report = new LinkedHashMap<String, List<Entry>>();
+        for (String name : getConfigurationNames()) {
+            Configuration configuration = getProject().getConfigurations().findByName(name);
+            if (configuration != null && configuration.isCanBeResolved()) {
+                report.put(name, getEntries(configuration));
+            }
+        }
+
+        File jsonFile = new File(getOutputDirectory(), JSON_NAME);
+        File htmlFile = new File(getOutputDirectory(), HTML_NAME);
+        writeJson(jsonFile, report, getBudget());
+        writeHtml(htmlFile, report, getBudget());
+        getLogger().info("Writing " + jsonFile + " and " + htmlFile);
+
+        List<String> overBudget = new ArrayList<String>();
+        for (Map.Entry<String, List<Entry>> e : report.entrySet()) {
+            long size = getKeptSize(e.getValue());
+            if (getBudget() != null && size > getBudget()) {
+                overBudget.add(e.getKey() + " (" + size + " bytes)");
+            }
+        }
+        if (!overBudget.isEmpty()) {
+            throw new GradleException("Native payload over the budget of " + getBudget() + " bytes in " + overBudget + ", see " + htmlFile);
+        }
+    }
+
+    /** Returns the artifacts of the dependencies of all "-platform" modules resolved leniently in the configuration. */
+    List<Entry> getEntries(Configuration configuration) {
+        List<Entry> entries = new ArrayList<Entry>();
+        Set<ResolvedDependency> modules = new LinkedHashSet<ResolvedDependency>();
+        collect(configuration.getResolvedConfiguration().getLenientConfiguration().getFirstLevelModuleDependencies(), modules);
+        for (ResolvedDependency rd : modules) {
+            if (!rd.getModuleName().contains("-platform")) {
+                continue;
+            }
+            String module = rd.getModuleGroup() + ":" + rd.getModuleName() + ":" + rd.getModuleVersion();
+            Set<String> kept = new LinkedHashSet<String>();
+            for (ResolvedDependency child : rd.getChildren()) {
+                for (ResolvedArtifact ra : child.getModuleArtifacts()) {
+                    if (ra.getClassifier() == null) {
+                        continue;
+                    }
+                    long size = 0;
+                    try {
+                        size = ra.getFile().length();
+                    } catch (RuntimeException e) {
+                        // probably ArtifactNotFoundException -> keep with no size
+                    }
+                    kept.add(child.getModuleName() + ":" + ra.getClassifier());
+                    entries.add(new Entry(module, child.getModuleGroup() + ":" + child.getModuleName() + ":" + child.getModuleVersion(),
+                                          ra.getClassifier(), size));
+                }
+            }
+            for (String[] d : getDeclaredArtifacts(rd.getModuleGroup(), rd.getModuleName(), rd.getModuleVersion())) {
+                if (!kept.contains(d[1] + ":" + d[3])) {
+                    entries.add(new Entry(module, d[0] + ":" + d[1] + ":" + d[2], d[3], -1));
+                }
+            }
+        }
+        return entries;
+    }
+
+    static void collect(Set<ResolvedDependency> dependencies, Set<ResolvedDependency> modules) {
+        for (ResolvedDependency rd : dependencies) {
+            if (modules.add(rd)) {
+                collect(rd.getChildren(), modules);
+            }
+        }
+    }
+
+    /** Returns the group, name, version, and classifier of the dependencies with a classifier declared in the POM file of the module. */
+    List<String[]> getDeclaredArtifacts(String group, String name, String version) {
+        List<String[]> artifacts = new ArrayList<String[]>();
+        List<Class<? extends Artifact>> artifactTypes = new ArrayList<Class<? extends Artifact>>();
+        artifactTypes.add(MavenPomArtifact.class);
+        for (ComponentArtifactsResult component : getProject().getDependencies().createArtifactResolutionQuery()
+                .forModule(group, name, version).withArtifacts(MavenModule.class, artifactTypes).execute().getResolvedComponents()) {
+            for (ArtifactResult artifact : component.getArtifacts(MavenPomArtifact.class)) {
+                if (artifact instanceof ResolvedArtifactResult) {
+                    try {
+                        artifacts.addAll(readPom(((ResolvedArtifactResult)artifact).getFile(), group, version));
+                    } catch (Exception e) {
+                        getLogger().warn("Could not read POM file of " + group + ":" + name + ":" + version + ": " + e);
+                    }
+                }
+            }
+        }
+        return artifacts;
+    }
+
+    /** Returns the dependencies with a classifier found in the POM file, with the properties it defines substituted, but skipping any others. */
+    static List<String[]> readPom(File pomFile, String group, String version) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(pomFile);
+        Element project = document.getDocumentElement();
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("project.groupId", group);
+        properties.put("project.version", version);
+        Element p = getChild(project, "properties");
+        if (p != null) {
+            NodeList nodes = p.getChildNodes();
+            for (int i = 0; i < nodes.getLength(); i++) {
+                if (nodes.item(i) instanceof Element) {
+                    properties.put(nodes.item(i).getNodeName(), nodes.item(i).getTextContent().trim());
+                }
+            }
+        }
+
+        List<String[]> artifacts = new ArrayList<String[]>();
+        Element dependencies = getChild(project, "dependencies");
+        if (dependencies == null) {
+            return artifacts;
+        }
+        NodeList nodes = dependencies.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (!(nodes.item(i) instanceof Element) || !nodes.item(i).getNodeName().equals("dependency")) {
+                continue;
+            }
+            String[] artifact = new String[4];
+            String[] tags = {"groupId", "artifactId", "version", "classifier"};
+            for (int j = 0; j < tags.length; j++) {
+                Element e = getChild((Element)nodes.item(i), tags[j]);
+                artifact[j] = e != null ? substitute(e.getTextContent().trim(), properties) : null;
+            }
+            if (artifact[3] != null && artifact[3].length() > 0 && !artifact[3].contains("${")) {
+                artifacts.add(artifact);
+            }
+        }
+        return artifacts;
+    }
+
+    static Element getChild(Element parent, String name) {
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element && n.getNodeName().equals(name)) {
+                return (Element)n;
+            }
+        }
+        return null;
+    }
+
+    /** Substitutes the properties in the value, again and again for the ones referring to other properties, until nothing changes. */
+    static String substitute(String value, Map<String, String> properties) {
+        // a property cannot refer to itself through more than all the other properties
+        for (int i = 0; i <= properties.size(); i++) {
+            String previous = value;
+            for (Map.Entry<String, String> e : properties.entrySet()) {
+                value = value.replace("${" + e.getKey() + "}", e.getValue());
+            }
+            if (value.equals(previous)) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    static long getKeptSize(List<Entry> entries) {
+        long size = 0;
+        for (Entry e : entries) {
+            size += e.isKept() ? e.size : 0;
+        }
+        return size;
+    }
+
+    static int getKeptCount(List<Entry> entries) {
+        int count = 0;
+        for (Entry e : entries) {
+            count += e.isKept() ? 1 : 0;
+        }
+        return count;
+    }
+
+    static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder b = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                b.append('\\').append(c);
+            } else if (c < 0x20) {
+                b.append(String.format("\\u%04x", (int)c));
+            } else {
+                b.append(c);
+            }
+        }
+        return b.append('"').toString();
+    }
+
+    static String escape(String s) {
+        return s == null ? "" : s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    static void writeJson(File file, Map<String, List<Entry>> report, Long budget) throws IOException {
+        file.getParentFile().mkdirs();
+        BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+        try {
+            writer.write("{\n  \"budget\": " + budget + ",\n  \"configurations\": [");
+            String separator = "\n";
+            for (Map.Entry<String, List<Entry>> c : report.entrySet()) {
+                List<Entry> entries = c.getValue();
+                writer.write(separator + "    {\n      \"name\": " + quote(c.getKey())
+                        + ",\n      \"keptSize\": " + getKeptSize(entries)
+                        + ",\n      \"keptCount\": " + getKeptCount(entries)
+                        + ",\n      \"removedCount\": " + (entries.size() - getKeptCount(entries))
+                        + ",\n      \"artifacts\": [");
+                String s = "\n";
+                for (Entry e : entries) {
+                    writer.write(s + "        {\"module\": " + quote(e.module) + ", \"artifact\": " + quote(e.artifact)
+                            + ", \"classifier\": " + quote(e.classifier) + ", \"kept\": " + e.isKept()
+                            + ", \"size\": " + (e.isKept() ? String.valueOf(e.size) : "null") + "}");
+                    s = ",\n";
+                }
+                writer.write((entries.isEmpty() ? "" : "\n      ") + "]\n    }");
+                separator = ",\n";
+            }
+            writer.write((report.isEmpty() ? "" : "\n  ") + "]\n}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    static void writeHtml(File file, Map<String, List<Entry>> report, Long budget) throws IOException {
+        file.getParentFile().mkdirs();
+        BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+        try {
+            writer.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>Native Payload Report</title>\n"
+                    + "<style>body { font-family: sans-serif; } td, th { padding: 2px 8px; text-align: left; } "
+                    + ".removed { color: #999; } .over { color: #c00; }</style>\n</head>\n<body>\n<h1>Native Payload Report</h1>\n");
+            if (budget != null) {
+                writer.write("<p>Budget: " + budget + " bytes per configuration</p>\n");
+            }
+            for (Map.Entry<String, List<Entry>> c : report.entrySet()) {
+                List<Entry> entries = c.getValue();
+                long size = getKeptSize(entries);
+                writer.write("<h2>" + escape(c.getKey()) + "</h2>\n<p" + (budget != null && size > budget ? " class=\"over\"" : "") + ">"
+                        + getKeptCount(entries) + " artifacts kept, " + size + " bytes, "
+                        + (entries.size() - getKeptCount(entries)) + " artifacts removed</p>\n");
+                if (entries.isEmpty()) {
+                    continue;
+                }
+                writer.write("<table>\n<tr><th>Module</th><th>Artifact</th><th>Classifier</th><th>Status</th><th>Size</th></tr>\n");
+                for (Entry e : entries) {
+                    writer.write("<tr" + (e.isKept() ? "" : " class=\"removed\"") + "><td>" + escape(e.module) + "</td><td>" + escape(e.artifact)
+                            + "</td><td>" + escape(e.classifier) + "</td><td>" + (e.isKept() ? "kept" : "removed")
+                            + "</td><td>" + (e.isKept() ? String.valueOf(e.size) : "") + "</td></tr>\n");
+                }
+                writer.write("</table>\n");
+            }
+            writer.write("</body>\n</html>\n");
+        } finally {
+            writer.close();
+        }
+    }
+}
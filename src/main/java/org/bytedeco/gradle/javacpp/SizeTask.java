@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * A Gradle task that analyzes the ELF files of native libraries, as found on Linux and Android, and writes
+ * to a JSON file, for each library, the sizes of its sections, its largest exported and internal symbols,
+ * and the share of code coming from the JNI wrappers generated by JavaCPP, as opposed to the code linked
+ * from other libraries. Symbols get read from ".symtab", or from ".dynsym" for stripped libraries, in which
+ * case internal symbols are missing, so the result gets marked as partial, without any share of JNI code.
+ * For complete results, analyze libraries built with {@link BuildTask#buildType} "debug". Libraries in other formats get skipped.
+ *
+ * @author Samuel Audet
+ */
+@CacheableTask
+public class SizeTask extends DefaultTask {
+    static final int SHT_SYMTAB = 2, SHT_DYNSYM = 11, STT_OBJECT = 1, STT_FUNC = 2, STB_LOCAL = 0, STV_HIDDEN = 2, STV_INTERNAL = 1;
+
+    /** A symbol defined in a library. */
+    static final class Symbol {
+        final String name, type;
+        final long value, size;
+        final boolean exported;
+        Symbol(String name, String type, long value, long size, boolean exported) {
+            this.name = name;
+            this.type = type;
+            this.value = value;
+            this.size = size;
+            this.exported = exported;
+        }
+
+        /** Returns true if this is a function of the JNI wrappers, or one of their helpers, generated by JavaCPP. */
+        boolean isJni() {
+            return type.equals("FUNC") && (name.startsWith("Java_") || name.startsWith("JNI_On") || name.contains("JavaCPP_"));
+        }
+    }
+
+    /** The sections and the symbols of a library. */
+    static final class Library {
+        final String path;
+        final long size;
+        final Map<String, Long> sections = new LinkedHashMap<String, Long>();
+        final List<Symbol> symbols = new ArrayList<Symbol>();
+        String symbolTable = null;
+        /** True when only the exported symbols from ".dynsym" are available. */
+        boolean partial = true;
+        Library(String path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+
+        /** Returns the size of the functions, each counted once regardless of aliases, from the JNI wrappers only if jni is true. */
+        long getCodeSize(boolean jni) {
+            long size = 0;
+            Set<Long> addresses = new HashSet<Long>();
+            for (Symbol s : symbols) {
+                if (s.type.equals("FUNC") && (!jni || s.isJni()) && addresses.add(s.value)) {
+                    size += s.size;
+                }
+            }
+            return size;
+        }
+
+        /** Returns at most count symbols, exported or not, from the largest to the smallest. */
+        List<Symbol> getLargestSymbols(boolean exported, int count) {
+            List<Symbol> list = new ArrayList<Symbol>();
+            for (Symbol s : symbols) {
+                if (s.exported == exported) {
+                    list.add(s);
+                }
+            }
+            Collections.sort(list, new Comparator<Symbol>() { public int compare(Symbol s1, Symbol s2) {
+                return s1.size != s2.size ? Long.compare(s2.size, s1.size) : s1.name.compareTo(s2.name);
+            }});
+            return list.subList(0, Math.min(count, list.size()));
+        }
+    }
+
+    /** Analyze the native libraries found in this tree. */
+    FileTree libraries = null;
+
+    /** List this number of the largest exported and internal symbols of each library. */
+    int symbolCount = 20;
+
+    /** Output the report in JSON format to this file. */
+    File outputFile = null;
+
+    @InputFiles @PathSensitive(PathSensitivity.RELATIVE)
+                public FileTree getLibraries()   { return libraries;   } public void setLibraries  (FileTree t) { libraries   = t; }
+    @Input      public int      getSymbolCount() { return symbolCount; } public void setSymbolCount(int i)      { symbolCount = i; }
+    @OutputFile public File     getOutputFile()  { return outputFile;  } public void setOutputFile (File f)     { outputFile  = f; }
+
+    @TaskAction public void report() throws IOException {
+        // sort the libraries by path to get the same output regardless of the file system
+        final Map<String, File> files = new TreeMap<String, File>();
+        getLibraries().visit(new FileVisitor() {
+            @Override public void visitDir(FileVisitDetails details) { }
+            @Override public void visitFile(FileVisitDetails details) {
+                if (IndexTask.isLibrary(details.getName())) {
+                    files.put(details.getRelativePath().getPathString(), details.getFile());
+                }
+            }
+        });
+
+        List<Library> libraries = new ArrayList<Library>();
+        for (Map.Entry<String, File> e : files.entrySet()) {
+            Library library = analyze(e.getKey(), e.getValue());
+            if (library != null) {
+                libraries.add(library);
+                if (library.partial) {
+                    getLogger().warn("Could not find \".symtab\" in " + e.getValue() + ": Reporting only its exported symbols");
+                }
+            } else {
+                getLogger().info("Skipping " + e.getValue() + ", which is not an ELF file");
+            }
+        }
+        getLogger().info("Writing " + getOutputFile());
+        writeJson(getOutputFile(), libraries, getSymbolCount());
+    }
+
+    /** Returns the sections and symbols of the ELF file, or null if it is not one. */
+    static Library analyze(String path, File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (b.limit() < 0x40 || b.getInt(0) != 0x7F454C46) {
+                return null;
+            }
+            boolean is64 = b.get(4) == 2;
+            b.order(b.get(5) == 2 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            long shoff = is64 ? b.getLong(0x28) : b.getInt(0x20) & 0xFFFFFFFFL;
+            int shentsize = b.getShort(is64 ? 0x3A : 0x2E) & 0xFFFF;
+            int shnum = b.getShort(is64 ? 0x3C : 0x30) & 0xFFFF;
+            int shstrndx = b.getShort(is64 ? 0x3E : 0x32) & 0xFFFF;
+
+            long[][] headers = new long[shnum][];
+            for (int i = 0; i < shnum; i++) {
+                int h = (int)(shoff + (long)i * shentsize);
+                // name, type, offset, size, link, entsize
+                headers[i] = is64 ? new long[] {b.getInt(h) & 0xFFFFFFFFL, b.getInt(h + 4), b.getLong(h + 24), b.getLong(h + 32), b.getInt(h + 40), b.getLong(h + 56)}
+                                  : new long[] {b.getInt(h) & 0xFFFFFFFFL, b.getInt(h + 4), b.getInt(h + 16) & 0xFFFFFFFFL,
+                                                b.getInt(h + 20) & 0xFFFFFFFFL, b.getInt(h + 24), b.getInt(h + 36) & 0xFFFFFFFFL};
+            }
+
+            Library library = new Library(path, channel.size());
+            int symtab = -1;
+            for (int i = 0; i < shnum; i++) {
+                String name = shstrndx < shnum ? getString(b, headers[shstrndx][2] + headers[i][0]) : "";
+                if (name.length() > 0) {
+                    Long size = library.sections.get(name);
+                    library.sections.put(name, (size != null ? size : 0) + headers[i][3]);
+                }
+                if (headers[i][1] == SHT_SYMTAB || (headers[i][1] == SHT_DYNSYM && symtab < 0)) {
+                    symtab = i;
+                    library.symbolTable = name;
+                    library.partial = headers[i][1] != SHT_SYMTAB;
+                }
+            }
+            if (symtab < 0) {
+                return library;
+            }
+
+            long[] h = headers[symtab];
+            long strings = headers[(int)h[4]][2];
+            long entsize = h[5] > 0 ? h[5] : (is64 ? 24 : 16);
+            for (long offset = h[2] + entsize; offset + entsize <= h[2] + h[3]; offset += entsize) {
+                int s = (int)offset;
+                long name = b.getInt(s) & 0xFFFFFFFFL;
+                int info = b.get(is64 ? s + 4 : s + 12), other = b.get(is64 ? s + 5 : s + 13);
+                int shndx = b.getShort(is64 ? s + 6 : s + 14) & 0xFFFF;
+                long value = is64 ? b.getLong(s + 8) : b.getInt(s + 4) & 0xFFFFFFFFL;
+                long size = is64 ? b.getLong(s + 16) : b.getInt(s + 8) & 0xFFFFFFFFL;
+                int type = info & 0xF, bind = (info >> 4) & 0xF, visibility = other & 0x3;
+                if (shndx == 0 || (type != STT_FUNC && type != STT_OBJECT)) {
+                    continue;
+                }
+                boolean exported = bind != STB_LOCAL && visibility != STV_HIDDEN && visibility != STV_INTERNAL;
+                library.symbols.add(new Symbol(getString(b, strings + name), type == STT_FUNC ? "FUNC" : "OBJECT", value, size, exported));
+            }
+            return library;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /** Returns the null-terminated string at the given offset. */
+    static String getString(ByteBuffer b, long offset) {
+        int start = (int)offset, end = start;
+        while (end < b.limit() && b.get(end) != 0) {
+            end++;
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = b.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeSymbols(BufferedWriter writer, String key, List<Symbol> symbols) throws IOException {
+        writer.write(",\n      \"" + key + "\": [");
+        String separator = "\n";
+        for (Symbol s : symbols) {
+            writer.write(separator + "        {\"name\": " + ReportTask.quote(s.name) + ", \"type\": \"" + s.type + "\", \"size\": " + s.size + "}");
+            separator = ",\n";
+        }
+        writer.write((symbols.isEmpty() ? "" : "\n      ") + "]");
+    }
+
+    static void writeJson(File file, List<Library> libraries, int symbolCount) throws IOException {
+        file.getParentFile().mkdirs();
+        BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+        try {
+            writer.write("{\n  \"libraries\": [");
+            String separator = "\n";
+            for (Library l : libraries) {
+                long codeSize = l.getCodeSize(false), jniCodeSize = l.getCodeSize(true);
+                writer.write(separator + "    {\n      \"path\": " + ReportTask.quote(l.path) + ",\n      \"size\": " + l.size + ",\n      \"sections\": {");
+                String s = "\n";
+                for (Map.Entry<String, Long> e : l.sections.entrySet()) {
+                    writer.write(s + "        " + ReportTask.quote(e.getKey()) + ": " + e.getValue());
+                    s = ",\n";
+                }
+                // without internal symbols, the code linked from other libraries looks much smaller than it is
+                writer.write((l.sections.isEmpty() ? "" : "\n      ") + "},\n      \"symbolTable\": " + ReportTask.quote(l.symbolTable)
+                        + ",\n      \"partial\": " + l.partial + ",\n      \"codeSize\": " + codeSize + ",\n      \"jniCodeSize\": " + jniCodeSize
+                        + ",\n      \"jniShare\": " + (codeSize > 0 && !l.partial ? String.format(Locale.ROOT, "%.4f", (double)jniCodeSize / codeSize) : "null"));
+                writeSymbols(writer, "exportedSymbols", l.getLargestSymbols(true, symbolCount));
+                writeSymbols(writer, "internalSymbols", l.getLargestSymbols(false, symbolCount));
+                writer.write("\n    }");
+                separator = ",\n";
+            }
+            writer.write((libraries.isEmpty() ? "" : "\n  ") + "]\n}\n");
+        } finally {
+            writer.close();
+        }
+    }
+}
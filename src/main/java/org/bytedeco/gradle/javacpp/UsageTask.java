@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * A Gradle task that scans the constant pools of the compiled classes of consumers for references to the classes
+ * of a preset, and writes the list of the top-level classes they use, directly or through other classes of the preset,
+ * such as superclasses, one per line in a file that {@link BuildTask#classListFile} can read, to generate and compile
+ * JNI code only for these classes. The granularity is the class, since all native methods of a class get generated.
+ *
+ * @author Samuel Audet
+ */
+@CacheableTask
+public class UsageTask extends DefaultTask {
+    /** Scan the class files found in these directories and JAR files for references. */
+    FileCollection classes = null;
+
+    /** The directories and JAR files with the class files of the preset. */
+    FileCollection presetClasses = null;
+
+    /** Consider as part of the preset only these classes or packages (suffixed with .* or .**), or all when null. */
+    String[] classOrPackageNames = null;
+
+    /** Output the names of the classes used to this file. */
+    File outputFile = null;
+
+    @Classpath       public FileCollection getClasses()             { return classes;             } public void setClasses            (FileCollection f) { classes             = f; }
+    @Classpath       public FileCollection getPresetClasses()       { return presetClasses;       } public void setPresetClasses      (FileCollection f) { presetClasses       = f; }
+    @Optional @Input public String[]       getClassOrPackageNames() { return classOrPackageNames; } public void setClassOrPackageNames(String[] s)       { classOrPackageNames = s; }
+    @OutputFile      public File           getOutputFile()          { return outputFile;          } public void setOutputFile         (File f)           { outputFile          = f; }
+
+    @TaskAction public void scan() throws IOException {
+        Map<String, Set<String>> preset = new TreeMap<String, Set<String>>();
+        for (Map.Entry<String, Set<String>> e : readClasses(getPresetClasses()).entrySet()) {
+            String name = e.getKey().replace('/', '.');
+            if (BuildPlugin.isClassIncluded(getTopLevelName(name).replace('.', '/'), getClassOrPackageNames())) {
+                preset.put(name, e.getValue());
+            }
+        }
+        Set<String> roots = new LinkedHashSet<String>();
+        for (Map.Entry<String, Set<String>> e : readClasses(getClasses()).entrySet()) {
+            // ignore the classes of the preset itself, which reference most other classes
+            if (!preset.containsKey(e.getKey().replace('/', '.'))) {
+                roots.addAll(e.getValue());
+            }
+        }
+
+        Set<String> used = getUsedClasses(preset, roots);
+        getLogger().info("Using " + used.size() + " of " + preset.size() + " classes of the preset");
+        getOutputFile().getParentFile().mkdirs();
+        BufferedWriter writer = Files.newBufferedWriter(getOutputFile().toPath(), StandardCharsets.UTF_8);
+        try {
+            for (String name : used) {
+                writer.write(name + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /** Returns the name of the class enclosing the given one, or the same name if it is not nested. */
+    static String getTopLevelName(String name) {
+        int i = name.indexOf('$', name.lastIndexOf('.') + 1);
+        return i > 0 ? name.substring(0, i) : name;
+    }
+
+    /**
+     * Returns the sorted top-level names of the classes of the preset referenced by the roots,
+     * and recursively by the classes of the preset referenced that way.
+     */
+    static Set<String> getUsedClasses(Map<String, Set<String>> preset, Set<String> roots) {
+        Set<String> visited = new LinkedHashSet<String>();
+        List<String> pending = new ArrayList<String>();
+        for (String name : roots) {
+            pending.add(name.replace('/', '.'));
+        }
+        while (!pending.isEmpty()) {
+            String name = pending.remove(pending.size() - 1);
+            Set<String> references = preset.get(name);
+            if (references == null || !visited.add(name)) {
+                continue;
+            }
+            for (String r : references) {
+                pending.add(r.replace('/', '.'));
+            }
+        }
+        Set<String> used = new TreeSet<String>();
+        for (String name : visited) {
+            used.add(getTopLevelName(name));
+        }
+        return used;
+    }
+
+    /** Returns the internal names of the classes found in the directories and JAR files, mapped to the names of the classes they reference. */
+    static Map<String, Set<String>> readClasses(FileCollection files) throws IOException {
+        Map<String, Set<String>> classes = new TreeMap<String, Set<String>>();
+        for (File file : files.getFiles()) {
+            if (file.isDirectory()) {
+                readDirectory(file, classes);
+            } else if (file.isFile() && file.getName().endsWith(".jar")) {
+                ZipFile zip = new ZipFile(file);
+                try {
+                    Enumeration<? extends ZipEntry> e = zip.entries();
+                    while (e.hasMoreElements()) {
+                        ZipEntry entry = e.nextElement();
+                        if (!entry.isDirectory() && entry.getName().endsWith(".class") && !entry.getName().endsWith("module-info.class")) {
+                            readClass(zip.getInputStream(entry), classes);
+                        }
+                    }
+                } finally {
+                    zip.close();
+                }
+            }
+        }
+        return classes;
+    }
+
+    static void readDirectory(File directory, Map<String, Set<String>> classes) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                readDirectory(file, classes);
+            } else if (file.getName().endsWith(".class") && !file.getName().equals("module-info.class")) {
+                readClass(Files.newInputStream(file.toPath()), classes);
+            }
+        }
+    }
+
+    static void readClass(InputStream is, Map<String, Set<String>> classes) throws IOException {
+        try {
+            Set<String> references = new LinkedHashSet<String>();
+            classes.put(readReferences(is, references), references);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Adds to references the internal names of the classes referenced in the constant pool of the class file,
+     * with the ones of array types reduced to the ones of their elements, and returns the name of the class itself.
+     */
+    static String readReferences(InputStream is, Set<String> references) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+        int count = in.readUnsignedShort();
+        String[] strings = new String[count];
+        int[] classes = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: strings[i] = in.readUTF(); break;
+                case 7: classes[i] = in.readUnsignedShort(); break;
+                case 8: case 16: case 19: case 20: in.readUnsignedShort(); break;
+                case 15: in.readUnsignedByte(); in.readUnsignedShort(); break;
+                case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18: in.readInt(); break;
+                case 5: case 6: in.readLong(); i++; break;
+                default: throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        in.readUnsignedShort();
+        String name = strings[classes[in.readUnsignedShort()]];
+
+        for (int i = 1; i < count; i++) {
+            String s = classes[i] > 0 ? strings[classes[i]] : null;
+            if (s == null || s.equals(name)) {
+                continue;
+            }
+            int j = s.lastIndexOf('[');
+            if (j >= 0) {
+                if (s.charAt(j + 1) != 'L') {
+                    continue;
+                }
+                s = s.substring(j + 2, s.length() - 1);
+            }
+            references.add(s);
+        }
+        return name;
+    }
+}
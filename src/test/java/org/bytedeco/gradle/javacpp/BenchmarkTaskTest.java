@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class BenchmarkTaskTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void argumentsAreSplit() {
+        assertEquals(Arrays.asList(), BenchmarkTask.splitArguments(" "));
+        assertEquals(Arrays.asList("1", "f(2, 3)", "\"a,b\"", "new int[] {4, 5}", "','"),
+                BenchmarkTask.splitArguments("1, f(2, 3), \"a,b\", new int[] {4, 5}, ','"));
+    }
+
+    @Test public void benchmarksAreGenerated() throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assumeNotNull(compiler);
+        File sourceDirectory = folder.newFolder("src");
+        File presetClasses = folder.newFolder("preset");
+        String[] sources = {
+                "p/global/foo.java", "package p.global; public class foo { "
+                        + "public static native int add(int a, int b); public static native void reset(); "
+                        + "public static native void put(String s); public static class Bar { public native void f(); } }",
+                "p/presets/foo.java", "package p.presets; public class foo { }",
+                "q/Other.java", "package q; public class Other { public static native long g(); }"};
+        List<String> arguments = new ArrayList<String>(Arrays.asList("-d", presetClasses.getPath()));
+        for (int i = 0; i < sources.length; i += 2) {
+            File file = new File(sourceDirectory, sources[i]);
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), sources[i + 1].getBytes(StandardCharsets.UTF_8));
+            arguments.add(file.getPath());
+        }
+        assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[arguments.size()])));
+
+        Project project = ProjectBuilder.builder().withProjectDir(folder.newFolder("project")).build();
+        BenchmarkTask task = project.getTasks().create("javacppBenchmarkSources", BenchmarkTask.class);
+        task.presetClasses = project.files(presetClasses);
+        task.classOrPackageNames = new String[] {"p.**"};
+        task.methods.put("p.global.foo.add", "1, 2");
+        task.methods.put("p.global.foo.reset", "");
+        task.methods.put("p.global.foo.put", "");
+        task.outputDirectory = new File(project.getBuildDir(), "javacpp/benchmarks");
+        task.generate();
+
+        File directory = new File(task.outputDirectory, "javacpp/benchmarks");
+        String load = new String(Files.readAllBytes(new File(directory, "LoadBenchmark.java").toPath()), StandardCharsets.UTF_8);
+        String call = new String(Files.readAllBytes(new File(directory, "CallBenchmark.java").toPath()), StandardCharsets.UTF_8);
+        // only classes of the preset with native methods get loaded, nested ones through their enclosing class
+        assertTrue(load.contains("@Benchmark public Object load_p_global_foo() {\n"
+                + "        return org.bytedeco.javacpp.Loader.load(p.global.foo.class);"));
+        assertFalse(load.contains("p.presets.foo"));
+        assertFalse(load.contains("q.Other"));
+        assertTrue(call.contains("org.bytedeco.javacpp.Loader.load(p.global.foo.class);"));
+        assertTrue(call.contains("@Benchmark public int call0_add() {\n        return p.global.foo.add(1, 2);"));
+        assertTrue(call.contains("@Benchmark public void call1_reset() {\n        p.global.foo.reset();"));
+        // no arguments to pass to non-primitive parameters
+        assertFalse(call.contains("put("));
+
+        task.methods.clear();
+        task.methods.put("p.global.foo.add", "");
+        task.generate();
+        call = new String(Files.readAllBytes(new File(directory, "CallBenchmark.java").toPath()), StandardCharsets.UTF_8);
+        assertTrue(call.contains("return p.global.foo.add((int)0, (int)0);"));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.bytedeco.javacpp.tools.Slf4jLogger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class BuildExecutorTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void compilerCommandsAreRecognized() {
+        List<String> command = Arrays.asList("g++", "-I/usr/include", "jniA.cpp", "jnijavacpp.cpp",
+                "-march=x86-64", "-m64", "-O3", "-s", "-Wl,-rpath,$ORIGIN/", "-shared", "-o", "libjniA.so", "-lz", "-L/usr/lib");
+        assertTrue(BuildExecutor.isCompiler(command));
+        assertTrue(BuildExecutor.isCompiler(Arrays.asList("aarch64-linux-android24-clang++", "jniA.cpp")));
+        assertFalse(BuildExecutor.isCompiler(Arrays.asList("cl", "jniA.cpp")));
+        assertFalse(BuildExecutor.isCompiler(Arrays.asList("g++", "--version")));
+        assertEquals(Arrays.asList("jniA.cpp", "jnijavacpp.cpp"), BuildExecutor.getSources(command));
+        assertEquals(Arrays.asList("-I/usr/include", "-march=x86-64", "-m64", "-O3"), BuildExecutor.getCompilerOptions(command));
+    }
+
+    @Test public void preambleEndsAtFirstDeclaration() throws IOException {
+        File file = folder.newFile("jniA.cpp");
+        Files.write(file.toPath(), ("// Generated by JavaCPP\n\n#ifdef __GNUC__\n    typedef int jint;\n#endif\n"
+                + "#include <jni.h>\n#include \"a.h\"\n\nstatic JavaVM* JavaCPP_vm = NULL;\n").getBytes(StandardCharsets.UTF_8));
+        assertEquals("// Generated by JavaCPP\n\n#ifdef __GNUC__\n    typedef int jint;\n#endif\n#include <jni.h>\n#include \"a.h\"\n\n",
+                BuildExecutor.getPreamble(file));
+    }
+
+    @Test public void preambleIsGuarded() throws IOException {
+        File include = folder.newFolder("include");
+        Files.write(new File(include, "a.h").toPath(), "/* a */\n#ifndef A_H\n#define A_H\nint a();\n#endif\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(include, "b.h").toPath(), "#pragma once\nint b();\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(include, "c.h").toPath(), "int c();\n".getBytes(StandardCharsets.UTF_8));
+        List<File> paths = BuildExecutor.getIncludePaths(Arrays.asList("-O3", "-I", include.getPath(), "-isystem/usr/include"), null);
+        assertEquals(Arrays.asList(include.getAbsoluteFile(), new File("/usr/include").getAbsoluteFile()), paths);
+        assertTrue(BuildExecutor.isGuarded(new File(include, "a.h")));
+        assertTrue(BuildExecutor.isGuarded(new File(include, "b.h")));
+        assertFalse(BuildExecutor.isGuarded(new File(include, "c.h")));
+
+        String guarded = "// Generated by JavaCPP\n\n#ifdef _WIN32\n    #define JNIEXPORT __declspec(dllexport)\n#endif\n"
+                + "#include <jni.h>\n#include \"a.h\"\n#include \"b.h\"\n";
+        assertEquals(guarded, BuildExecutor.getGuardedPreamble(guarded + "#include \"c.h\"\n#include <stdio.h>\n", null, paths));
+        // stops before whole conditional blocks with declarations
+        assertEquals(guarded, BuildExecutor.getGuardedPreamble(guarded + "#ifdef __GNUC__\n    #define X\n    typedef int jint;\n#endif\n", null, paths));
+        assertEquals("", BuildExecutor.getGuardedPreamble("#include \"c.h\"\n#include \"a.h\"\n", null, paths));
+    }
+
+    @Test public void dependenciesAreParsed() throws IOException {
+        File file = folder.newFile("a.d");
+        Files.write(file.toPath(), "a.h.gch: a.h /usr/include/jni.h \\\n /path\\ with\\ spaces/b.h a.h\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("a.h", "/usr/include/jni.h", "/path with spaces/b.h"), BuildExecutor.readDependencies(file));
+    }
+
+    @Test public void dependencyMapRoundTrips() throws IOException {
+        File file = folder.newFile("dependencies.d");
+        Map<String, List<String>> map = new TreeMap<String, List<String>>();
+        map.put("/out/libjniA.so", Arrays.asList("/usr/include/jni.h", "/path with spaces/a.h"));
+        map.put("/out/libjniB.so", Arrays.asList("/usr/include/$b.h"));
+        BuildExecutor.writeDependencyMap(file, map);
+        assertEquals(map, BuildExecutor.readDependencyMap(file));
+        assertEquals(Arrays.asList("/usr/include/jni.h", "/path with spaces/a.h", "/usr/include/$b.h"), BuildExecutor.readDependencies(file));
+    }
+
+    @Test public void linkedLibrariesAreFound() throws IOException {
+        File first = folder.newFolder("first"), second = folder.newFolder("second");
+        for (File file : new File[] {new File(first, "libz.a"), new File(second, "libz.so"), new File(second, "libz.a"),
+                new File(second, "libfoo.so.1"), new File(second, "libbar.so"), new File(folder.getRoot(), "jnijavacpp.o")}) {
+            Files.write(file.toPath(), new byte[0]);
+        }
+        List<String> command = Arrays.asList("g++", "jniA.cpp", "jnijavacpp.o", "-shared", "-o", "libbar.so",
+                "-L" + first.getPath(), "-lz", "-L", "second", "-l:libfoo.so.1", "-lbar", "-lm", "-Wl,-rpath,$ORIGIN/");
+        assertEquals(Arrays.asList(new File(folder.getRoot(), "jnijavacpp.o").getAbsolutePath(), new File(first, "libz.a").getAbsolutePath(),
+                new File(second, "libfoo.so.1").getAbsolutePath(), new File(second, "libbar.so").getAbsolutePath()),
+                BuildExecutor.getLibraries(command, folder.getRoot()));
+    }
+
+    @Test public void runtimeIsCompiledOnce() throws IOException, InterruptedException {
+        assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+        File jniDirectory = folder.newFolder("jdk");
+        File libraryDirectory = folder.newFolder("lib");
+        Files.write(new File(jniDirectory, "jni.h").toPath(), new byte[0]);
+        Files.write(folder.newFile("jnijavacpp.cpp").toPath(), "#include <jni.h>\n".getBytes(StandardCharsets.UTF_8));
+        File log = new File(folder.getRoot(), "log");
+        File compiler = new File(folder.newFolder("bin"), "g++");
+        Files.write(compiler.toPath(), ("#!/bin/sh\necho \"$@\" >> " + log.getPath() + "\n"
+                + "while [ $# -gt 0 ]; do if [ \"$1\" = \"-o\" ]; then touch \"$2\"; fi; shift; done\n").getBytes(StandardCharsets.UTF_8));
+        compiler.setExecutable(true);
+
+        BuildExecutor executor = new BuildExecutor(new Slf4jLogger(BuildExecutor.class));
+        executor.forked = true;
+        executor.runtimeDirectory = folder.newFolder("runtime");
+        List<String> commandA = executor.compileRuntime(Arrays.asList(compiler.getPath(), "-I" + jniDirectory, "-I", libraryDirectory.getPath(),
+                "jniA.cpp", "jnijavacpp.cpp", "-O3", "-shared", "-o", "libjniA.so"), folder.getRoot(), null);
+        List<String> commandB = executor.compileRuntime(Arrays.asList(compiler.getPath(), "-I" + jniDirectory,
+                "jniB.cpp", "jnijavacpp.cpp", "-O3", "-shared", "-o", "libjniB.so"), folder.getRoot(), null);
+        List<String> lines = Files.readAllLines(log.toPath(), StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).startsWith("-I" + jniDirectory + " -O3 -c " + new File(folder.getRoot(), "jnijavacpp.cpp") + " -o "));
+
+        String object = commandA.get(5);
+        assertTrue(object.startsWith(executor.runtimeDirectory.getAbsolutePath()) && object.endsWith("jnijavacpp.o"));
+        assertTrue(new File(object).isFile());
+        assertEquals(Arrays.asList("jniA.cpp"), BuildExecutor.getSources(commandA));
+        assertEquals(Arrays.asList(compiler.getPath(), "-I" + jniDirectory, "jniB.cpp", object, "-O3", "-shared", "-o", "libjniB.so"), commandB);
+
+        // different options get their own object file
+        List<String> commandC = executor.compileRuntime(Arrays.asList(compiler.getPath(), "-I" + jniDirectory,
+                "jniC.cpp", "jnijavacpp.cpp", "-O0", "-g", "-shared", "-o", "libjniC.so"), folder.getRoot(), null);
+        assertEquals(2, Files.readAllLines(log.toPath(), StandardCharsets.UTF_8).size());
+        assertNotEquals(object, commandC.get(3));
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BuildGovernorTest {
+    BuildGovernor governor = new BuildGovernor() {
+        @Override public BuildGovernor.Parameters getParameters() { return null; }
+    };
+
+    @Test public void permitsAreLimitedToTotal() throws InterruptedException {
+        int total = governor.getPermits();
+        assertTrue(total >= 1 && total <= Runtime.getRuntime().availableProcessors());
+        assertEquals(total, governor.acquire(total + 100));
+        assertEquals(0, governor.getSemaphore().availablePermits());
+        governor.release(total);
+        assertEquals(1, governor.acquire(0));
+        assertEquals(total - 1, governor.getSemaphore().availablePermits());
+        governor.release(1);
+    }
+}
@@ -21,13 +21,39 @@
  */
 package org.bytedeco.gradle.javacpp;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.bytedeco.javacpp.Loader;
 import org.gradle.testfixtures.ProjectBuilder;
 import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 
 public class BuildPluginTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    File createJar(String name, long time, String... entries) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        for (String entry : entries) {
+            ZipEntry e = new ZipEntry(entry);
+            e.setTime(time);
+            zos.putNextEntry(e);
+            zos.write(entry.getBytes("UTF-8"));
+            zos.closeEntry();
+        }
+        zos.close();
+        return file;
+    }
+
     @Test public void pluginRegistersTasks() {
         Project project = ProjectBuilder.builder().build();
         project.getPlugins().apply("java");
@@ -40,6 +66,62 @@ public class BuildPluginTest {
         assertNotNull(project.getTasks().findByName("javacppBuildParser"));
         assertNotNull(project.getTasks().findByName("javacppBuildCompiler"));
         assertNotNull(project.getTasks().findByName("javacppPomProperties"));
+        assertNotNull(project.getTasks().findByName("javacppIndex"));
         assertNotNull(project.getTasks().findByName("javacppJar"));
+        assertNull(project.getTasks().findByName("javacppBuildCompilerRelease"));
+
+        ((BuildTask)project.getTasks().getByName("javacppBuildCompiler")).encoding = "UTF-8";
+        ((BuildExtension)project.getExtensions().getByName("javacppBuild")).buildVariants("release");
+        BuildTask release = (BuildTask)project.getTasks().getByName("javacppBuildCompilerRelease");
+        assertEquals("release", release.getBuildType());
+        assertEquals("UTF-8", release.getEncoding());
+        assertNotNull(project.getTasks().findByName("javacppJarRelease"));
+        assertNull(project.getTasks().findByName("javacppJarDebug"));
+    }
+
+    @Test public void platformsMapToAttributes() {
+        assertEquals("linux", BuildExtension.getOperatingSystem("linux-x86_64"));
+        assertEquals("macos", BuildExtension.getOperatingSystem("macosx-arm64"));
+        assertEquals("x86-64", BuildExtension.getArchitecture("windows-x86_64"));
+        assertEquals("aarch64", BuildExtension.getArchitecture("android-arm64"));
+        assertEquals("arm", BuildExtension.getArchitecture("linux-armhf"));
+        assertEquals("ppc64le", BuildExtension.getArchitecture("linux-ppc64le"));
+    }
+
+    @Test public void parserClassesAreSelected() {
+        String[] names = {"org.bytedeco.zlib.presets.*", "org.bytedeco.other.Preset$Inner", "org.bytedeco.tree.**"};
+        assertTrue(BuildPlugin.isClassIncluded("org/bytedeco/zlib/presets/zlib.java", names));
+        assertFalse(BuildPlugin.isClassIncluded("org/bytedeco/zlib/presets/sub/zlib.java", names));
+        assertFalse(BuildPlugin.isClassIncluded("org/bytedeco/zlib/global/zlib.java", names));
+        assertTrue(BuildPlugin.isClassIncluded("org/bytedeco/other/Preset.java", names));
+        assertFalse(BuildPlugin.isClassIncluded("org/bytedeco/other/Other.java", names));
+        assertTrue(BuildPlugin.isClassIncluded("org/bytedeco/tree/a/b/C.java", names));
+        assertFalse(BuildPlugin.isClassIncluded("org/bytedeco/treehouse/C.java", names));
+        assertTrue(BuildPlugin.isClassIncluded("org/bytedeco/anything/C.java", null));
+    }
+
+    @Test public void existingArtifactsAreCopiedAsIs() throws IOException {
+        File in = createJar("a-linux-x86_64.jar", 1600000000000L, "org/a/linux-x86_64/liba.so", "org/a/A.class", "META-INF/MANIFEST.MF");
+        File out = new File(folder.newFolder("libs"), "a-linux-x86_64.jar");
+        BuildExtension.copyUnchanged(in, out);
+        assertArrayEquals(Files.readAllBytes(in.toPath()), Files.readAllBytes(out.toPath()));
+
+        // unchanged copies are left alone
+        assertTrue(out.setLastModified(1000000000000L));
+        BuildExtension.copyUnchanged(in, out);
+        assertEquals(1000000000000L, out.lastModified());
+    }
+
+    @Test public void classifiersAreDeclared() {
+        Project project = ProjectBuilder.builder().withProjectDir(folder.getRoot()).withName("a").build();
+        project.setGroup("org.example");
+        Configuration configuration = project.getConfigurations().create("javacppPlatform");
+        project.getDependencies().add("javacppPlatform", "org.example:a-platform:1.0");
+        project.getDependencies().add("javacppPlatform", "org.example:a:1.0:linux-x86_64");
+        project.getDependencies().add("javacppPlatform", "org.example:a:1.0:windows-x86_64");
+        project.getDependencies().add("javacppPlatform", "org.other:a:1.0:macosx-arm64");
+        assertEquals(Arrays.asList("linux-x86_64", "windows-x86_64"), BuildExtension.getDeclaredClassifiers(project, configuration));
+        // without resolving anything at configuration time
+        assertEquals(Configuration.State.UNRESOLVED, configuration.getState());
     }
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import org.bytedeco.javacpp.annotation.Platform;
+import org.bytedeco.javacpp.tools.Builder;
+import org.bytedeco.javacpp.tools.Slf4jLogger;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class BuildTaskTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    static File write(File dir, String path, String content) throws IOException {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test public void optionsCanBeSentToWorkers() throws IOException, ClassNotFoundException {
+        Project project = ProjectBuilder.builder().build();
+        BuildTask task = project.getTasks().create("javacppBuildParser", BuildTask.class);
+        task.setClassPath(new String[] {"classes"});
+        task.setIncludePath(new String[] {"include"});
+        task.setOutputDirectory(new File("src"));
+        task.setCompile(false);
+        task.setClassOrPackageNames(new String[] {"org.bytedeco.zlib.presets.*"});
+        task.setEnvironmentVariables(Collections.singletonMap("CC", "gcc"));
+        task.setFork(true);
+        task.setMaxHeapSize("2g");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(task.getBuildOptions());
+        out.close();
+        BuildOptions options = (BuildOptions)new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertArrayEquals(new String[] {"classes"}, options.classPath);
+        assertArrayEquals(new String[] {"include"}, options.includePath);
+        assertEquals(task.getStagingDirectory(), options.outputDirectory);
+        assertFalse(options.compile);
+        assertTrue(options.generate);
+        assertArrayEquals(new String[] {"org.bytedeco.zlib.presets.*"}, options.classOrPackageNames);
+        assertEquals("gcc", options.environmentVariables.get("CC"));
+        assertEquals(task.getDependencyFile(), options.dependencyFile);
+        assertEquals(1, options.permits);
+    }
+
+    @Test public void recordedDependenciesAndCompilerAreInputs() throws IOException {
+        Project project = ProjectBuilder.builder().withProjectDir(folder.newFolder("project")).build();
+        File dir = folder.getRoot();
+        File header = write(dir, "include/foo.h", "int foo();");
+        File library = write(dir, "lib/libfoo.so", "");
+        write(dir, "lib/libunused.so", "");
+        write(dir, "lib/cmake/foo.cmake", "");
+        File compiler = write(dir, "bin/g++", "");
+        BuildTask task = project.getTasks().create("javacppBuildCompiler", BuildTask.class);
+        task.setLinkPath(new String[] {library.getParent()});
+        Properties properties = new Properties();
+        properties.setProperty("platform.compiler", "g++");
+        task.setPropertyKeysAndValues(properties);
+        task.setEnvironmentVariables(Collections.singletonMap("PATH", compiler.getParent()));
+        assertEquals(new File(project.getBuildDir(), "javacpp/javacppBuildCompiler.d"), task.getDependencyFile());
+        assertTrue(task.getNativeDependencies().isEmpty());
+
+        BuildExecutor.writeDependencyMap(task.getDependencyFile(), Collections.singletonMap(
+                new File(dir, "out/libjnifoo.so").getPath(), Arrays.asList(header.getPath(), library.getPath())));
+        assertEquals(new HashSet<File>(Arrays.asList(header, library)), task.getNativeDependencies().getFiles());
+        assertEquals(Collections.singleton(compiler), task.getCompilerFile().getFiles());
+
+        task.setCompile(false);
+        assertTrue(task.getNativeDependencies().isEmpty());
+        assertTrue(task.getCompilerFile().isEmpty());
+    }
+
+    @Test public void parsedHeadersAreInputs() throws Exception {
+        Project project = ProjectBuilder.builder().withProjectDir(folder.newFolder("project")).build();
+        File include = folder.newFolder("include");
+        File header = write(include, "parsed.h", "int parsed();");
+        File classes = new File(ParsedPreset.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        BuildTask task = project.getTasks().create("javacppBuildParser", BuildTask.class);
+        task.setClassPath(new String[] {classes.getPath()});
+        task.setIncludePath(new String[] {include.getPath()});
+        task.setClassOrPackageNames(new String[] {ParsedPreset.class.getName()});
+        task.setOutputDirectory(folder.newFolder("src"));
+        task.setCompile(false);
+        // headers not found do not get parsed either
+        assertEquals(Collections.singleton(header.getCanonicalFile()), task.getParsedHeaders().getFiles());
+
+        task.setCompile(true);
+        assertNull(task.findParsedHeaders());
+        assertTrue(task.getParsedHeaders().isEmpty());
+    }
+
+    @Test public void outputsForPlatformAreNotOnClassPath() throws IOException {
+        Project project = ProjectBuilder.builder().withProjectDir(folder.newFolder("project")).build();
+        File classes = folder.newFolder("classes");
+        File cls = write(classes, "org/foo/Foo.class", "");
+        write(classes, "org/foo/linux-x86_64/libjniFoo.so", "");
+        BuildTask task = project.getTasks().create("javacppBuildCompiler", BuildTask.class);
+        task.setClassPath(new String[] {classes.getPath()});
+        task.setProperties("linux-x86_64");
+        assertEquals(Collections.singleton(cls), task.getClassPathFiles().getFiles());
+    }
+
+    @Test public void onlyChangedFilesAreUpdated() throws IOException {
+        File source = folder.newFolder("generated"), target = folder.newFolder("src");
+        File manifest = new File(folder.getRoot(), "generated.txt");
+        File same = write(target, "org/a/Same.java", "same");
+        File changed = write(target, "org/a/Changed.java", "old");
+        File stale = write(target, "org/b/Stale.java", "stale");
+        File user = write(target, "org/a/User.java", "user");
+        Files.write(manifest.toPath(), Arrays.asList("org/a/Same.java", "org/a/Changed.java", "org/b/Stale.java"), StandardCharsets.UTF_8);
+        same.setLastModified(1000000000000L);
+
+        write(source, "org/a/Same.java", "same");
+        write(source, "org/a/Changed.java", "new");
+        write(source, "org/a/Added.java", "added");
+        assertEquals(3, BuildTask.syncDirectory(source, target, manifest, false));
+
+        assertEquals(1000000000000L, same.lastModified());
+        assertEquals("new", new String(Files.readAllBytes(changed.toPath()), StandardCharsets.UTF_8));
+        assertTrue(new File(target, "org/a/Added.java").isFile());
+        assertFalse(stale.exists());
+        assertFalse(stale.getParentFile().exists());
+        assertTrue(user.isFile());
+        assertEquals(Arrays.asList("org/a/Added.java", "org/a/Changed.java", "org/a/Same.java"),
+                Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8));
+
+        write(source, "org/a/Same.java", "same");
+        assertEquals(3, BuildTask.syncDirectory(source, target, manifest, true));
+        assertTrue(same.isFile());
+        assertFalse(user.exists());
+        assertFalse(changed.exists());
+    }
+
+    @Test public void propertiesAreWrittenSorted() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("platform", "linux-x86_64");
+        properties.setProperty("platform.library.path", "org/bytedeco/zlib/linux-x86_64/");
+        properties.setProperty("platform.compiler.includepath", "-I");
+        File file = new File(folder.getRoot(), "javacpp/javacppBuildCompiler.properties");
+        BuildTask.storeProperties(properties, file);
+        assertEquals(Arrays.asList("platform=linux-x86_64", "platform.compiler.includepath=-I",
+                "platform.library.path=org/bytedeco/zlib/linux-x86_64/"), Files.readAllLines(file.toPath(), StandardCharsets.ISO_8859_1));
+        assertEquals(properties, BuildTask.loadProperties(file));
+
+        Project project = ProjectBuilder.builder().build();
+        BuildTask task = project.getTasks().create("javacppBuildCompiler", BuildTask.class);
+        assertEquals(new File(project.getBuildDir(), "javacpp/javacppBuildCompiler.properties"), task.getPropertiesFile());
+        assertFalse(task.getEffectiveProperties().isPresent());
+        task.setPropertiesFile(file);
+        assertEquals(properties, task.getEffectiveProperties().get());
+
+        task.setProjectProperties(properties);
+        assertEquals("org/bytedeco/zlib/linux-x86_64/", project.findProperty("javacpp.platform.library.path"));
+    }
+
+    @Test public void buildTypesReplaceDefaultOptions() {
+        Properties properties = new Properties();
+        properties.setProperty("platform", "linux-x86_64");
+        properties.setProperty("platform.compiler", "g++");
+        properties.setProperty("platform.compiler.default", "-march=x86-64 -m64 -O3 -s");
+        Properties debug = new Properties();
+        debug.putAll(properties);
+        BuildOptions.applyBuildType(debug, "debug", false);
+        assertEquals("-march=x86-64 -m64 -O0 -g", debug.getProperty("platform.compiler.default"));
+
+        BuildOptions.applyBuildType(properties, "release", true);
+        assertEquals("-march=x86-64 -m64 -s -O3 -fvisibility=hidden -fvisibility-inlines-hidden -ffunction-sections -fdata-sections "
+                + "-Wl,--gc-sections -flto", properties.getProperty("platform.compiler.default"));
+
+        // other compilers keep their options
+        properties.setProperty("platform.compiler", "cl");
+        properties.setProperty("platform.compiler.default", "/Oi /O2 /EHsc");
+        BuildOptions.applyBuildType(properties, "release", false);
+        assertEquals("/Oi /O2 /EHsc", properties.getProperty("platform.compiler.default"));
+    }
+
+    @Test public void buildTypesApplyToPropertiesOfUser() throws Exception {
+        BuildOptions options = new BuildOptions();
+        options.classPath = new String[] {folder.newFolder("classes").getPath()};
+        options.classOrPackageNames = new String[] {"p.*"};
+        options.properties = "linux-x86_64";
+        options.propertyKeysAndValues = new Properties();
+        options.propertyKeysAndValues.setProperty("platform.compiler", "clang++");
+        options.propertyKeysAndValues.setProperty("platform.compiler.default", "-march=x86-64 -m64 -O2");
+        options.buildType = "release";
+        Properties properties = options.createBuilder(new Slf4jLogger(Builder.class), null, null).getProperties();
+        assertEquals("clang++", properties.getProperty("platform.compiler"));
+        assertEquals("-march=x86-64 -m64 -O3 -fvisibility=hidden -fvisibility-inlines-hidden -ffunction-sections -fdata-sections "
+                + "-Wl,--gc-sections", properties.getProperty("platform.compiler.default"));
+
+        // and not to the ones of a compiler that does not take them
+        options.propertyKeysAndValues.setProperty("platform.compiler", "cl");
+        options.propertyKeysAndValues.setProperty("platform.compiler.default", "/Oi /O2 /EHsc");
+        properties = options.createBuilder(new Slf4jLogger(Builder.class), null, null).getProperties();
+        assertEquals("/Oi /O2 /EHsc", properties.getProperty("platform.compiler.default"));
+    }
+
+    @Test public void variantsCopyAllOptions() {
+        Project project = ProjectBuilder.builder().build();
+        BuildTask compiler = project.getTasks().create("javacppBuildCompiler", BuildTask.class);
+        compiler.buildPath = new String[] {"/usr/local/lib"};
+        compiler.resourcePath = new String[] {"/usr/local/share"};
+        compiler.encoding = "UTF-8";
+        compiler.outputName = "jniall";
+        compiler.jarPrefix = "all";
+        compiler.workingDirectory = project.getProjectDir();
+        compiler.classListFile = new File(project.getBuildDir(), "javacpp/usage.txt");
+        compiler.outputDirectory = new File(project.getBuildDir(), "output");
+
+        BuildTask release = project.getTasks().create("javacppBuildCompilerRelease", BuildTask.class);
+        release.copyOptions(compiler);
+        release.buildType = "release";
+        assertArrayEquals(compiler.getBuildPath(), release.getBuildPath());
+        assertArrayEquals(compiler.getResourcePath(), release.getResourcePath());
+        assertEquals("UTF-8", release.getEncoding());
+        assertEquals("jniall", release.getOutputName());
+        assertEquals("all", release.getJarPrefix());
+        assertEquals(project.getProjectDir(), release.getWorkingDirectory());
+        assertEquals(compiler.getClassListFile(), release.getClassListFile());
+        // but not what the variant writes on its own
+        assertNull(release.getOutputDirectory());
+        assertEquals("release", release.getBuildType());
+        assertEquals(new File(project.getBuildDir(), "javacpp/javacppBuildCompilerRelease.d"), release.getDependencyFile());
+    }
+}
+
+@org.bytedeco.javacpp.annotation.Properties(target = "org.bytedeco.gradle.javacpp.Parsed", value = @Platform(include = {"parsed.h", "<missing.h>"}))
+class ParsedPreset {
+}
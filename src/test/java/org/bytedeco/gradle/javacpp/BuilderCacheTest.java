@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+import org.bytedeco.javacpp.Loader;
+import org.gradle.api.services.BuildServiceParameters;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class BuilderCacheTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    BuilderCache cache = new BuilderCache() {
+        @Override public BuildServiceParameters.None getParameters() { return null; }
+    };
+
+    @Test public void cacheReturnsCopiesOfProperties() throws IOException {
+        Properties p = cache.getProperties("linux-x86_64");
+        assertEquals(Loader.loadProperties("linux-x86_64", null), p);
+        p.setProperty("platform", "changed");
+        assertEquals("linux-x86_64", cache.getProperties("linux-x86_64").getProperty("platform"));
+    }
+
+    @Test public void cacheReloadsChangedProperties() throws IOException {
+        File dir = folder.newFolder("resources");
+        File file = new File(dir, "org/bytedeco/javacpp/properties/test-x86_64.properties");
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), "platform.compiler=gcc\n".getBytes("UTF-8"));
+        cache.resourceLoader = new URLClassLoader(new URL[] {dir.toURI().toURL()}, null);
+        assertEquals("gcc", cache.getProperties("test-x86_64").getProperty("platform.compiler"));
+
+        Files.write(file.toPath(), "platform.compiler=clang\n".getBytes("UTF-8"));
+        assertEquals("clang", cache.getProperties("test-x86_64").getProperty("platform.compiler"));
+
+        System.setProperty("org.bytedeco.javacpp.platform.compiler", "icc");
+        try {
+            assertEquals("icc", cache.getProperties("test-x86_64").getProperty("platform.compiler"));
+        } finally {
+            System.clearProperty("org.bytedeco.javacpp.platform.compiler");
+        }
+        assertEquals("clang", cache.getProperties("test-x86_64").getProperty("platform.compiler"));
+    }
+
+    @Test public void cacheReplacesChangedClassLoaders() throws IOException {
+        File dir = folder.newFolder("classes");
+        File file = new File(dir, "A.class");
+        Files.write(file.toPath(), new byte[] {1, 2, 3});
+        String[] paths = {dir.getPath()};
+
+        ClassLoader loader = cache.getClassLoader(paths);
+        assertSame(loader, cache.getClassLoader(paths));
+
+        Files.write(file.toPath(), new byte[] {1, 2, 3, 4});
+        assertNotSame(loader, cache.getClassLoader(paths));
+        cache.close();
+    }
+
+    @Test public void cacheKeepsUnchangedClassLoadersAcrossBuilds() throws IOException {
+        File dir = folder.newFolder("classes");
+        File file = new File(dir, "A.class");
+        Files.write(file.toPath(), new byte[] {1, 2, 3});
+        String[] paths = {dir.getPath()};
+
+        URLClassLoader loader = (URLClassLoader)cache.getClassLoader(paths);
+        cache.close();
+        assertNotNull(loader.findResource("A.class"));
+        assertSame(loader, cache.getClassLoader(paths));
+
+        Files.write(file.toPath(), new byte[] {1, 2, 3, 4});
+        cache.close();
+        assertNull(loader.findResource("A.class"));
+        assertFalse(BuilderCache.classLoaders.containsKey(Arrays.toString(paths)));
+        assertNotSame(loader, cache.getClassLoader(paths));
+        cache.close();
+    }
+}
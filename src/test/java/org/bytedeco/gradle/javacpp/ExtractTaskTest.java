@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.gradle.api.Project;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ExtractTaskTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    File createJar(String name, String... entries) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        for (String entry : entries) {
+            zos.putNextEntry(new ZipEntry(entry));
+            zos.write(entry.getBytes("UTF-8"));
+            zos.closeEntry();
+        }
+        zos.close();
+        return file;
+    }
+
+    @Test public void taskExtractsLibraries() throws IOException {
+        Project project = ProjectBuilder.builder().withProjectDir(folder.newFolder("project")).build();
+        File a = createJar("a-android-arm64.jar", "org/bytedeco/a/A.class", "lib/arm64-v8a/liba.so", "lib/arm64-v8a/libjnijavacpp.so");
+        File b = createJar("b-android-x86.jar", "lib/x86/libb.so");
+        File c = createJar("c-android-arm64.jar", "lib/arm64-v8a/libjnijavacpp.so", "lib/arm64-v8a/libc.so");
+
+        ExtractTask task = project.getTasks().create("javacppExtract", ExtractTask.class);
+        task.archives = project.files(a, b, c);
+        task.abis = new String[] {"arm64-v8a"};
+        task.outputDirectory = new File(project.getBuildDir(), "javacpp/lib");
+        task.indexFile = new File(project.getBuildDir(), "javacpp/extract.index");
+
+        task.extract(task.archives.getFiles(), null, true);
+        assertTrue(new File(task.outputDirectory, "arm64-v8a/liba.so").isFile());
+        assertTrue(new File(task.outputDirectory, "arm64-v8a/libc.so").isFile());
+        assertTrue(new File(task.outputDirectory, "arm64-v8a/libjnijavacpp.so").isFile());
+        assertFalse(new File(task.outputDirectory, "x86/libb.so").exists());
+        assertFalse(new File(task.outputDirectory, "org").exists());
+
+        // removing an archive deletes only the libraries that no other archive provides
+        task.archives = project.files(a, b);
+        task.extract(Collections.<File>emptySet(), new LinkedHashSet<File>(Arrays.asList(c)), false);
+        assertTrue(new File(task.outputDirectory, "arm64-v8a/liba.so").isFile());
+        assertTrue(new File(task.outputDirectory, "arm64-v8a/libjnijavacpp.so").isFile());
+        assertFalse(new File(task.outputDirectory, "arm64-v8a/libc.so").exists());
+        assertFalse(task.readIndex().containsKey(c.getAbsolutePath()));
+
+        // archives with the same name from different groups do not replace each other in the index
+        File d = new File(folder.newFolder("other"), a.getName());
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(d));
+        zos.putNextEntry(new ZipEntry("lib/arm64-v8a/libd.so"));
+        zos.closeEntry();
+        zos.close();
+        task.archives = project.files(a, b, d);
+        task.extract(new LinkedHashSet<File>(Arrays.asList(d)), null, false);
+        assertTrue(task.readIndex().containsKey(a.getAbsolutePath()));
+        assertTrue(task.readIndex().containsKey(d.getAbsolutePath()));
+        task.extract(Collections.<File>emptySet(), new LinkedHashSet<File>(Arrays.asList(a)), false);
+        assertFalse(new File(task.outputDirectory, "arm64-v8a/liba.so").exists());
+        assertTrue(new File(task.outputDirectory, "arm64-v8a/libd.so").isFile());
+    }
+
+    @Test public void platformsMapToAbis() {
+        assertEquals("armeabi-v7a", ExtractTask.getAbi("android-arm"));
+        assertEquals("arm64-v8a", ExtractTask.getAbi("android-arm64"));
+        assertEquals("x86_64", ExtractTask.getAbi("android-x86_64-gpu"));
+        assertNull(ExtractTask.getAbi("linux-x86_64"));
+    }
+}
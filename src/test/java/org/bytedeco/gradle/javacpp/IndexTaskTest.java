@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class IndexTaskTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    File createLibrary(File dir, String name, String content) throws IOException {
+        File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+        return file;
+    }
+
+    @Test public void taskIndexesLibrariesInLoadOrder() throws IOException {
+        Project project = ProjectBuilder.builder().withProjectDir(folder.newFolder("project")).build();
+        File classes = folder.newFolder("classes");
+        File dir = new File(classes, "org/bytedeco/a/linux-x86_64");
+        createLibrary(dir, "libjnia.so", "\0libb.so.1\0liba.so\0");
+        createLibrary(dir, "liba.so", "\0libb.so.1\0");
+        createLibrary(dir, "libb.so.1", "\0libxliba.so\0");
+        createLibrary(dir, "a.properties", "not a library");
+
+        IndexTask task = project.getTasks().create("javacppIndex", IndexTask.class);
+        task.libraries = project.fileTree(classes);
+        task.outputDirectory = new File(project.getBuildDir(), "javacpp/index");
+        task.index();
+
+        File index = new File(task.outputDirectory, "org/bytedeco/a/linux-x86_64/" + IndexTask.INDEX_NAME);
+        List<String> lines = Files.readAllLines(index.toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertEquals("libb.so.1\t13\t", lines.get(0).substring(0, 13));
+        assertTrue(lines.get(1).startsWith("liba.so\t11\t"));
+        assertTrue(lines.get(2).startsWith("libjnia.so\t19\t"));
+        assertEquals(64, lines.get(0).split("\t")[2].length());
+
+        // the output depends only on the content of the libraries
+        byte[] first = Files.readAllBytes(index.toPath());
+        task.index();
+        assertArrayEquals(first, Files.readAllBytes(index.toPath()));
+    }
+
+    @Test public void namesAreMatchedWhole() {
+        assertTrue(IndexTask.containsName("\0@rpath/libz.1.dylib\0", "libz.1.dylib"));
+        assertFalse(IndexTask.containsName("\0libxliba.so\0", "liba.so"));
+        assertFalse(IndexTask.containsName("\0libz.so.1\0", "libz.so"));
+        assertTrue(IndexTask.isLibrary("libz.so.1"));
+        assertTrue(IndexTask.isLibrary("zlib1.dll"));
+        assertFalse(IndexTask.isLibrary("zlib.h"));
+    }
+}
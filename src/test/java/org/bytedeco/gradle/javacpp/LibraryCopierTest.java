@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import org.bytedeco.javacpp.annotation.Platform;
+import org.bytedeco.javacpp.annotation.Properties;
+import org.bytedeco.javacpp.tools.Builder;
+import org.bytedeco.javacpp.tools.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class LibraryCopierTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Properties(@Platform(library = "jnicopier", link = "copier"))
+    public static class Preset { }
+
+    static File write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test public void linkedLibrariesAreFound() throws Exception {
+        Builder builder = new Builder(new Logger());
+        String prefix = builder.getProperties().getProperty("platform.library.prefix", "");
+        String suffix = builder.getProperties().getProperty("platform.library.suffix", "");
+        File linkDir = folder.newFolder("lib");
+        File library = write(new File(linkDir, prefix + "copier" + suffix), "library");
+        builder.addProperty("platform.linkpath", linkDir.getPath());
+
+        File outputDir = folder.newFolder("output");
+        File jniLibrary = write(new File(outputDir, prefix + "jnicopier" + suffix), "jni");
+        LibraryCopier copier = new LibraryCopier(new Logger(), null);
+        copier.plan(builder.getProperties(), Collections.<Class>singleton(Preset.class), new File[] {jniLibrary}, true, false);
+        assertEquals(Collections.singletonMap(new File(outputDir, library.getName()), library), copier.copies);
+
+        assertEquals(1, copier.copy(2));
+        assertEquals("library", new String(Files.readAllBytes(new File(outputDir, library.getName()).toPath()), StandardCharsets.UTF_8));
+        assertEquals(0, copier.copy(2));
+    }
+
+    @Test public void unchangedFilesAreSkipped() throws IOException {
+        File in = write(new File(folder.getRoot(), "in/libz.so"), "zlib");
+        File out = new File(folder.getRoot(), "out/libz.so");
+        assertFalse(LibraryCopier.isUpToDate(in, out));
+
+        LibraryCopier.copy(in, out);
+        assertTrue(LibraryCopier.isUpToDate(in, out));
+        assertEquals(in.lastModified(), out.lastModified());
+        assertFalse(Files.isSameFile(in.toPath(), out.toPath()));
+
+        write(out, "zlub");
+        in.setLastModified(1000000000000L);
+        out.setLastModified(1600000000000L);
+        assertFalse(LibraryCopier.isUpToDate(in, out));
+        write(out, "zlib");
+        out.setLastModified(1600000000000L);
+        assertTrue(LibraryCopier.isUpToDate(in, out));
+    }
+}
@@ -21,18 +21,35 @@
  */
 package org.bytedeco.gradle.javacpp;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import org.bytedeco.javacpp.Loader;
 import org.gradle.testfixtures.ProjectBuilder;
+import org.gradle.api.Action;
+import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
 import org.gradle.api.artifacts.dsl.ComponentMetadataHandler;
 import org.gradle.api.internal.artifacts.dsl.DefaultComponentMetadataHandler;
 import org.gradle.api.internal.project.DefaultProject;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 
 public class PlatformPluginTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
     @Test public void pluginAddsRule() throws IllegalAccessException, InvocationTargetException, NoSuchFieldException {
         Project project = ProjectBuilder.builder().build();
         project.getPlugins().apply("java");
@@ -49,4 +66,159 @@ public class PlatformPluginTest {
         Iterable i = (Iterable)f.get(h);
         assertTrue(i.iterator().hasNext());
     }
+
+    @Test public void settingsPlatformIsReused() throws IllegalAccessException, NoSuchFieldException {
+        assertEquals("linux-x86_64,macosx-arm64", PlatformSettingsPlugin.normalize(" linux-x86_64, ,macosx-arm64,linux-x86_64"));
+
+        Project project = ProjectBuilder.builder().build();
+        project.getGradle().getExtensions().getExtraProperties().set(PlatformSettingsPlugin.PLATFORM_PROPERTY, "linux-x86_64,macosx-arm64");
+        project.getPlugins().apply("java");
+        project.getPlugins().apply("org.bytedeco.gradle-javacpp-platform");
+        assertEquals("linux-x86_64,macosx-arm64", project.findProperty("javacppPlatform"));
+        ((DefaultProject)project).evaluate();
+
+        ComponentMetadataHandler h = project.getDependencies().getComponents();
+        Field f = DefaultComponentMetadataHandler.class.getDeclaredField("metadataRuleContainer");
+        f.setAccessible(true);
+        Iterable i = (Iterable)f.get(h);
+        assertFalse(i.iterator().hasNext());
+    }
+
+    static void writePom(File dir, String artifactId, String dependencies) throws IOException {
+        dir.mkdirs();
+        Files.write(new File(dir, artifactId + "-1.0.pom").toPath(), ("<project><modelVersion>4.0.0</modelVersion><groupId>org.example</groupId>"
+                + "<artifactId>" + artifactId + "</artifactId><version>1.0</version><dependencies>" + dependencies
+                + "</dependencies></project>").getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Set<String> getFileNames(Iterable<File> files) {
+        Set<String> names = new TreeSet<String>();
+        for (File f : files) {
+            names.add(f.getName());
+        }
+        return names;
+    }
+
+    @Test public void configurationsSelectTheirPlatforms() throws IOException {
+        final File repo = folder.newFolder("repo");
+        String dependencies = "";
+        writePom(new File(repo, "org/example/a/1.0"), "a", "");
+        for (String platform : new String[] {"linux-x86_64", "windows-x86_64"}) {
+            dependencies += "<dependency><groupId>org.example</groupId><artifactId>a</artifactId><version>1.0</version>"
+                    + "<classifier>" + platform + "</classifier></dependency>";
+            Files.write(new File(repo, "org/example/a/1.0/a-1.0-" + platform + ".jar").toPath(), new byte[] {1, 2, 3});
+        }
+        writePom(new File(repo, "org/example/a-platform/1.0"), "a-platform", dependencies);
+        Files.write(new File(repo, "org/example/a-platform/1.0/a-platform-1.0.jar").toPath(), new byte[] {1, 2, 3});
+
+        Project project = ProjectBuilder.builder().withProjectDir(folder.newFolder("b")).build();
+        project.getPlugins().apply("java");
+        project.getPlugins().apply("org.bytedeco.gradle-javacpp-platform");
+        project.getRepositories().maven(new Action<MavenArtifactRepository>() { public void execute(MavenArtifactRepository r) {
+            r.setUrl(repo.toURI());
+        }});
+        project.getExtensions().getExtraProperties().set("javacppPlatform", "windows-x86_64");
+        project.getExtensions().getExtraProperties().set("javacppPlatform.testRuntimeClasspath", "linux-x86_64");
+        project.getDependencies().add("implementation", "org.example:a-platform:1.0");
+        ((DefaultProject)project).evaluate();
+
+        assertEquals("linux-x86_64", project.getConfigurations().getByName("testRuntimeClasspath")
+                .getAttributes().getAttribute(PlatformPlugin.PLATFORM_ATTRIBUTE));
+        assertEquals("windows-x86_64", project.getConfigurations().getByName("runtimeClasspath")
+                .getAttributes().getAttribute(PlatformPlugin.PLATFORM_ATTRIBUTE));
+        // selections may include platforms not in "javacppPlatform"
+        assertEquals(new TreeSet<String>(Arrays.asList("a-1.0-windows-x86_64.jar", "a-platform-1.0.jar")),
+                getFileNames(project.getConfigurations().getByName("runtimeClasspath")));
+        assertEquals(new TreeSet<String>(Arrays.asList("a-1.0-linux-x86_64.jar", "a-platform-1.0.jar")),
+                getFileNames(project.getConfigurations().getByName("testRuntimeClasspath")));
+    }
+
+    @Test public void configurationsSelectTheirPlatformsWithModuleMetadata() throws IOException {
+        final File repo = folder.newFolder("repo");
+        writePom(new File(repo, "org/example/a/1.0"), "a", "");
+        String dependencies = "";
+        for (String platform : new String[] {"linux-x86_64", "windows-x86_64"}) {
+            dependencies += (dependencies.length() > 0 ? "," : "") + "{\"group\":\"org.example\",\"module\":\"a\",\"version\":{\"requires\":\"1.0\"},"
+                    + "\"thirdPartyCompatibility\":{\"artifactSelector\":{\"name\":\"a\",\"type\":\"jar\",\"extension\":\"jar\",\"classifier\":\"" + platform + "\"}}}";
+            Files.write(new File(repo, "org/example/a/1.0/a-1.0-" + platform + ".jar").toPath(), new byte[] {1, 2, 3});
+        }
+        // as published by Gradle, with a POM that points to the module metadata, whose variants are not named like the ones derived from POMs
+        File dir = new File(repo, "org/example/a-platform/1.0");
+        dir.mkdirs();
+        Files.write(new File(dir, "a-platform-1.0.pom").toPath(), ("<project><!-- do_not_remove: published-with-gradle-metadata -->"
+                + "<modelVersion>4.0.0</modelVersion><groupId>org.example</groupId><artifactId>a-platform</artifactId><version>1.0</version>"
+                + "</project>").getBytes(StandardCharsets.UTF_8));
+        String files = "\"files\":[{\"name\":\"a-platform-1.0.jar\",\"url\":\"a-platform-1.0.jar\"}]";
+        Files.write(new File(dir, "a-platform-1.0.module").toPath(), ("{\"formatVersion\":\"1.1\","
+                + "\"component\":{\"group\":\"org.example\",\"module\":\"a-platform\",\"version\":\"1.0\"},\"variants\":["
+                + "{\"name\":\"apiElements\",\"attributes\":{\"org.gradle.category\":\"library\",\"org.gradle.dependency.bundling\":\"external\","
+                + "\"org.gradle.libraryelements\":\"jar\",\"org.gradle.usage\":\"java-api\"}," + files + "},"
+                + "{\"name\":\"runtimeElements\",\"attributes\":{\"org.gradle.category\":\"library\",\"org.gradle.dependency.bundling\":\"external\","
+                + "\"org.gradle.libraryelements\":\"jar\",\"org.gradle.usage\":\"java-runtime\"},\"dependencies\":[" + dependencies + "]," + files + "}]}")
+                .getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(dir, "a-platform-1.0.jar").toPath(), new byte[] {1, 2, 3});
+
+        Project project = ProjectBuilder.builder().withProjectDir(folder.newFolder("b")).build();
+        project.getPlugins().apply("java");
+        project.getPlugins().apply("org.bytedeco.gradle-javacpp-platform");
+        project.getRepositories().maven(new Action<MavenArtifactRepository>() { public void execute(MavenArtifactRepository r) {
+            r.setUrl(repo.toURI());
+        }});
+        project.getExtensions().getExtraProperties().set("javacppPlatform", "windows-x86_64");
+        project.getExtensions().getExtraProperties().set("javacppPlatform.testRuntimeClasspath", "linux-x86_64");
+        project.getDependencies().add("implementation", "org.example:a-platform:1.0");
+        ((DefaultProject)project).evaluate();
+
+        assertEquals(new TreeSet<String>(Arrays.asList("a-1.0-windows-x86_64.jar", "a-platform-1.0.jar")),
+                getFileNames(project.getConfigurations().getByName("runtimeClasspath")));
+        assertEquals(new TreeSet<String>(Arrays.asList("a-1.0-linux-x86_64.jar", "a-platform-1.0.jar")),
+                getFileNames(project.getConfigurations().getByName("testRuntimeClasspath")));
+        assertTrue(PlatformPlugin.getUnselectedModules(project.getConfigurations().getByName("testRuntimeClasspath")
+                .getIncoming().getResolutionResult().getAllComponents()).isEmpty());
+
+        // configurations created after evaluation also select the default platforms
+        Configuration late = project.getConfigurations().create("lateClasspath");
+        late.setCanBeConsumed(false);
+        late.getDependencies().add(project.getDependencies().create("org.example:a-platform:1.0"));
+        assertEquals(new TreeSet<String>(Arrays.asList("a-1.0-windows-x86_64.jar", "a-platform-1.0.jar")), getFileNames(late));
+        assertEquals("windows-x86_64", late.getAttributes().getAttribute(PlatformPlugin.PLATFORM_ATTRIBUTE));
+    }
+
+    /** Stands in for the Android Gradle Plugin, with only what {@link PlatformPlugin#configureAndroid(Project)} uses. */
+    public static class AndroidPlugin implements Plugin<Project> {
+        @Override public void apply(Project project) {
+            project.getExtensions().add("android", new AndroidExtension());
+            project.getTasks().register("preBuild");
+        }
+    }
+    public static class AndroidExtension {
+        final AndroidSourceSets sourceSets = new AndroidSourceSets();
+        public AndroidSourceSets getSourceSets() { return sourceSets; }
+    }
+    public static class AndroidSourceSets {
+        final AndroidSourceSet main = new AndroidSourceSet();
+        public AndroidSourceSet getByName(String name) { return name.equals("main") ? main : null; }
+    }
+    public static class AndroidSourceSet {
+        final AndroidDirectorySet jniLibs = new AndroidDirectorySet();
+        public AndroidDirectorySet getJniLibs() { return jniLibs; }
+    }
+    public static class AndroidDirectorySet {
+        final List<Object> srcDirs = new ArrayList<Object>();
+        public AndroidDirectorySet srcDir(Object dir) { srcDirs.add(dir); return this; }
+    }
+
+    @Test public void androidPluginGetsExtractTask() {
+        Project project = ProjectBuilder.builder().withProjectDir(folder.getRoot()).build();
+        project.getPlugins().apply("org.bytedeco.gradle-javacpp-platform");
+        project.getExtensions().getExtraProperties().set("javacppPlatform", "android-arm64,android-x86,linux-x86_64");
+        project.getPlugins().apply("com.android.application");
+
+        ExtractTask task = (ExtractTask)project.getTasks().getByName("javacppExtract");
+        assertArrayEquals(new String[] {"arm64-v8a", "x86"}, task.getAbis());
+        assertSame(project.getConfigurations().getByName("javacpp"), task.getArchives());
+        assertTrue(project.getTasks().getByName("preBuild").getDependsOn().contains("javacppExtract"));
+        AndroidExtension android = (AndroidExtension)project.getExtensions().getByName("android");
+        assertEquals(Arrays.asList((Object)task.getOutputDirectory()), android.sourceSets.main.jniLibs.srcDirs);
+    }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class PlatformResolutionTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void resolutionListsArtifactsAndFiles() throws IOException {
+        final File repo = folder.newFolder("repo");
+        File dir = new File(repo, "org/example/a/1.0");
+        dir.mkdirs();
+        Files.write(new File(dir, "a-1.0.pom").toPath(), ("<project><modelVersion>4.0.0</modelVersion><groupId>org.example</groupId>"
+                + "<artifactId>a</artifactId><version>1.0</version></project>").getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(dir, "a-1.0-linux-x86_64.jar").toPath(), new byte[] {1, 2, 3});
+
+        Project project = ProjectBuilder.builder().withProjectDir(folder.newFolder("a")).withName("a").build();
+        project.setGroup("org.example");
+        project.getRepositories().maven(new Action<MavenArtifactRepository>() { public void execute(MavenArtifactRepository r) {
+            r.setUrl(repo.toURI());
+        }});
+        Configuration configuration = project.getConfigurations().create("javacppPlatform");
+        project.getDependencies().add("javacppPlatform", "org.example:a:1.0:linux-x86_64");
+        project.getDependencies().add("javacppPlatform", "org.example:a:1.0:windows-x86_64");
+        project.getDependencies().add("javacppPlatform", "org.example:missing:1.0:linux-arm64");
+
+        PlatformResolution resolution = PlatformResolution.resolve(project, configuration);
+        assertEquals("a", project.getName());
+        // only a detached copy gets resolved, leaving the project and the configuration as is
+        assertEquals(Configuration.State.UNRESOLVED, configuration.getState());
+        List<PlatformResolution.Module> modules = resolution.getModules();
+        assertEquals(2, modules.size());
+        assertEquals("a", modules.get(0).getName());
+        assertEquals(2, modules.get(0).getArtifacts().size());
+        for (PlatformResolution.Artifact a : modules.get(0).getArtifacts()) {
+            if (a.getClassifier().equals("linux-x86_64")) {
+                assertTrue(a.getFile().isFile());
+            } else {
+                assertEquals("windows-x86_64", a.getClassifier());
+                assertNull(a.getFile());
+            }
+        }
+        assertEquals("missing", modules.get(1).getName());
+        assertEquals("linux-arm64", modules.get(1).getArtifacts().get(0).getClassifier());
+        assertNull(modules.get(1).getArtifacts().get(0).getFile());
+    }
+}
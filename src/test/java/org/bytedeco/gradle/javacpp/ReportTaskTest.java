@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
+import org.gradle.api.internal.project.DefaultProject;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ReportTaskTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void nestedPropertiesAreSubstituted() throws Exception {
+        // as written by BuildExtension.xmlAction()
+        File dir = folder.newFolder("a-platform");
+        PlatformPluginTest.writePom(dir, "a-platform",
+                "<dependency><groupId>${project.groupId}</groupId><artifactId>a</artifactId><version>${project.version}</version>"
+                + "<classifier>${javacpp.platform.linux-x86_64}</classifier></dependency>"
+                + "<dependency><groupId>${project.groupId}</groupId><artifactId>a</artifactId><version>${project.version}</version>"
+                + "<classifier>${javacpp.platform.loop}</classifier></dependency>");
+        File pom = new File(dir, "a-platform-1.0.pom");
+        Files.write(pom.toPath(), new String(Files.readAllBytes(pom.toPath()), StandardCharsets.UTF_8)
+                .replace("<dependencies>", "<properties><javacpp.platform.extension>-gpu</javacpp.platform.extension>"
+                        + "<javacpp.platform.linux-x86_64>linux-x86_64${javacpp.platform.extension}</javacpp.platform.linux-x86_64>"
+                        + "<javacpp.platform.loop>${javacpp.platform.loop}</javacpp.platform.loop></properties><dependencies>")
+                .getBytes(StandardCharsets.UTF_8));
+
+        List<String[]> declared = ReportTask.readPom(pom, "org.example", "1.0");
+        assertEquals(1, declared.size());
+        assertEquals(Arrays.asList("org.example", "a", "1.0", "linux-x86_64-gpu"), Arrays.asList(declared.get(0)));
+    }
+
+    @Test public void reportListsKeptAndRemovedArtifacts() throws Exception {
+        final File repo = folder.newFolder("repo");
+        PlatformPluginTest.writePom(new File(repo, "org/example/a/1.0"), "a", "");
+        Files.write(new File(repo, "org/example/a/1.0/a-1.0-linux-x86_64.jar").toPath(), new byte[] {1, 2, 3});
+        Files.write(new File(repo, "org/example/a/1.0/a-1.0-windows-x86_64.jar").toPath(), new byte[] {1, 2, 3, 4});
+        PlatformPluginTest.writePom(new File(repo, "org/example/a-platform/1.0"), "a-platform",
+                "<dependency><groupId>org.example</groupId><artifactId>a</artifactId><version>${project.version}</version>"
+                + "<classifier>${a.linux}</classifier></dependency>"
+                + "<dependency><groupId>org.example</groupId><artifactId>a</artifactId><version>${project.version}</version>"
+                + "<classifier>windows-x86_64</classifier></dependency>");
+        File pom = new File(repo, "org/example/a-platform/1.0/a-platform-1.0.pom");
+        Files.write(pom.toPath(), new String(Files.readAllBytes(pom.toPath()), StandardCharsets.UTF_8)
+                .replace("<dependencies>", "<properties><a.linux>linux-x86_64</a.linux></properties><dependencies>").getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(repo, "org/example/a-platform/1.0/a-platform-1.0.jar").toPath(), new byte[] {1});
+
+        List<String[]> declared = ReportTask.readPom(pom, "org.example", "1.0");
+        assertEquals(2, declared.size());
+        assertEquals(Arrays.asList("org.example", "a", "1.0", "linux-x86_64"), Arrays.asList(declared.get(0)));
+
+        Project project = ProjectBuilder.builder().withProjectDir(folder.newFolder("b")).build();
+        project.getPlugins().apply("java");
+        project.getPlugins().apply("org.bytedeco.gradle-javacpp-platform");
+        project.getRepositories().maven(new Action<MavenArtifactRepository>() { public void execute(MavenArtifactRepository r) {
+            r.setUrl(repo.toURI());
+        }});
+        project.getExtensions().getExtraProperties().set("javacppPlatform", "linux-x86_64");
+        project.getExtensions().getExtraProperties().set("javacppPayloadBudget", "2");
+        project.getDependencies().add("implementation", "org.example:a-platform:1.0");
+        ((DefaultProject)project).evaluate();
+
+        ReportTask task = (ReportTask)project.getTasks().getByName("javacppReport");
+        assertTrue(Arrays.asList(task.getConfigurationNames()).contains("runtimeClasspath"));
+        assertEquals(Long.valueOf(2), task.getBudget());
+        try {
+            task.report();
+            fail("The payload should be over the budget");
+        } catch (GradleException e) {
+            assertTrue(e.getMessage().contains("runtimeClasspath (3 bytes)"));
+        }
+
+        String json = new String(Files.readAllBytes(new File(task.getOutputDirectory(), ReportTask.JSON_NAME).toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"name\": \"runtimeClasspath\",\n      \"keptSize\": 3,\n      \"keptCount\": 1,\n      \"removedCount\": 1"));
+        assertTrue(json.contains("{\"module\": \"org.example:a-platform:1.0\", \"artifact\": \"org.example:a:1.0\", "
+                + "\"classifier\": \"linux-x86_64\", \"kept\": true, \"size\": 3}"));
+        assertTrue(json.contains("\"classifier\": \"windows-x86_64\", \"kept\": false, \"size\": null}"));
+        String html = new String(Files.readAllBytes(new File(task.getOutputDirectory(), ReportTask.HTML_NAME).toPath()), StandardCharsets.UTF_8);
+        assertTrue(html.contains("<h2>runtimeClasspath</h2>\n<p class=\"over\">1 artifacts kept, 3 bytes, 1 artifacts removed</p>"));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class SizeTaskTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Returns the offset of the string added to the table. */
+    static int addString(ByteArrayOutputStream table, String s) {
+        int offset = table.size();
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        table.write(bytes, 0, bytes.length);
+        table.write(0);
+        return offset;
+    }
+
+    /**
+     * Writes a little-endian ELF64 file with a ".text" section and a ".symtab", or a ".dynsym" when stripped,
+     * with the given symbols as name, info, other, section index, value, and size.
+     */
+    static void writeElf(File file, boolean stripped, Object[][] symbols) throws IOException {
+        ByteArrayOutputStream shstrtab = new ByteArrayOutputStream(), strtab = new ByteArrayOutputStream();
+        addString(shstrtab, "");
+        addString(strtab, "");
+        int[] names = {0, addString(shstrtab, ".text"), addString(shstrtab, stripped ? ".dynsym" : ".symtab"), addString(shstrtab, ".strtab"), addString(shstrtab, ".shstrtab")};
+        ByteBuffer symtab = ByteBuffer.allocate(24 * (symbols.length + 1)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < symbols.length; i++) {
+            int s = 24 * (i + 1);
+            symtab.putInt(s, addString(strtab, (String)symbols[i][0]));
+            symtab.put(s + 4, ((Integer)symbols[i][1]).byteValue());
+            symtab.put(s + 5, ((Integer)symbols[i][2]).byteValue());
+            symtab.putShort(s + 6, ((Integer)symbols[i][3]).shortValue());
+            symtab.putLong(s + 8, (Long)symbols[i][4]);
+            symtab.putLong(s + 16, (Long)symbols[i][5]);
+        }
+
+        int symtabOffset = 64, strtabOffset = symtabOffset + symtab.capacity(), shstrtabOffset = strtabOffset + strtab.size();
+        int shoff = shstrtabOffset + shstrtab.size();
+        ByteBuffer b = ByteBuffer.allocate(shoff + 5 * 64).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(0, 0x464C457F).put(4, (byte)2).put(5, (byte)1).put(6, (byte)1);
+        b.putLong(0x28, shoff).putShort(0x3A, (short)64).putShort(0x3C, (short)5).putShort(0x3E, (short)4);
+        symtab.rewind();
+        b.position(symtabOffset);
+        b.put(symtab).put(strtab.toByteArray()).put(shstrtab.toByteArray());
+        // type, offset, size, link, entsize
+        long[][] headers = {{0, 0, 0, 0, 0}, {1, 0, 300, 0, 0}, {stripped ? 11 : 2, symtabOffset, symtab.capacity(), 3, 24},
+                            {3, strtabOffset, strtab.size(), 0, 0}, {3, shstrtabOffset, shstrtab.size(), 0, 0}};
+        for (int i = 0; i < headers.length; i++) {
+            int h = shoff + 64 * i;
+            b.putInt(h, names[i]).putInt(h + 4, (int)headers[i][0]).putLong(h + 24, headers[i][1]).putLong(h + 32, headers[i][2])
+             .putInt(h + 40, (int)headers[i][3]).putLong(h + 56, headers[i][4]);
+        }
+        Files.write(file.toPath(), b.array());
+    }
+
+    @Test public void taskReportsSectionsAndSymbols() throws IOException {
+        Project project = ProjectBuilder.builder().withProjectDir(folder.newFolder("project")).build();
+        File libraries = folder.newFolder("classes");
+        File library = new File(libraries, "org/bytedeco/a/linux-x86_64/libjnia.so");
+        library.getParentFile().mkdirs();
+        // info is (binding << 4) | type, and other is the visibility
+        writeElf(library, false, new Object[][] {{"Java_org_bytedeco_a_A_f", 0x12, 0, 1, 0x100L, 100L},
+                                                 {"_ZL12JavaCPP_initv",      0x02, 0, 1, 0x200L, 50L},
+                                                 {"deflate",                 0x12, 2, 1, 0x300L, 150L},
+                                                 {"table",                   0x01, 0, 1, 0x400L, 40L},
+                                                 {"malloc",                  0x12, 0, 0, 0L, 0L}});
+        File stripped = new File(libraries, "org/bytedeco/a/linux-x86_64/libstripped.so");
+        writeElf(stripped, true, new Object[][] {{"Java_org_bytedeco_a_B_g", 0x12, 0, 1, 0x100L, 80L}});
+        Files.write(new File(library.getParentFile(), "libother.dylib").toPath(), new byte[] {1, 2, 3});
+
+        SizeTask.Library l = SizeTask.analyze("libjnia.so", library);
+        assertEquals(Arrays.asList(".text", ".symtab", ".strtab", ".shstrtab"), Arrays.asList(l.sections.keySet().toArray()));
+        assertEquals(Long.valueOf(300), l.sections.get(".text"));
+        assertEquals(".symtab", l.symbolTable);
+        assertFalse(l.partial);
+        assertEquals(4, l.symbols.size());
+        assertEquals(300, l.getCodeSize(false));
+        assertEquals(150, l.getCodeSize(true));
+        List<SizeTask.Symbol> exported = l.getLargestSymbols(true, 20);
+        assertEquals(1, exported.size());
+        assertEquals("Java_org_bytedeco_a_A_f", exported.get(0).name);
+        List<SizeTask.Symbol> internal = l.getLargestSymbols(false, 2);
+        assertEquals("deflate", internal.get(0).name);
+        assertEquals("_ZL12JavaCPP_initv", internal.get(1).name);
+        SizeTask.Library s = SizeTask.analyze("libstripped.so", stripped);
+        assertEquals(".dynsym", s.symbolTable);
+        assertTrue(s.partial);
+        assertNull(SizeTask.analyze("libother.dylib", new File(library.getParentFile(), "libother.dylib")));
+
+        SizeTask task = project.getTasks().create("javacppSizeReport", SizeTask.class);
+        task.libraries = project.fileTree(libraries);
+        task.outputFile = new File(project.getBuildDir(), "reports/javacpp/size.json");
+        task.report();
+        String json = new String(Files.readAllBytes(task.outputFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"path\": \"org/bytedeco/a/linux-x86_64/libjnia.so\""));
+        assertFalse(json.contains("libother.dylib"));
+        assertTrue(json.contains("\"partial\": false,\n      \"codeSize\": 300,\n      \"jniCodeSize\": 150,\n      \"jniShare\": 0.5000"));
+        assertTrue(json.contains("\"partial\": true,\n      \"codeSize\": 80,\n      \"jniCodeSize\": 80,\n      \"jniShare\": null"));
+        assertTrue(json.contains("\"exportedSymbols\": [\n        {\"name\": \"Java_org_bytedeco_a_A_f\", \"type\": \"FUNC\", \"size\": 100}\n      ]"));
+        assertTrue(json.contains("{\"name\": \"table\", \"type\": \"OBJECT\", \"size\": 40}"));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * Licensed either under the Apache License, Version 2.0, or (at your option)
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation (subject to the "Classpath" exception),
+ * either version 2, or any later version (collectively, the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.gnu.org/licenses/
+ *     http://www.gnu.org/software/classpath/license.html
+ *
+ * or as provided in the LICENSE.txt file that accompanied this code.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bytedeco.gradle.javacpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.gradle.api.Project;
+import org.gradle.api.internal.project.DefaultProject;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class UsageTaskTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Compiles the sources, given as pairs of paths and contents, into the output directory. */
+    void compile(File outputDirectory, String classPath, String... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assumeNotNull(compiler);
+        File sourceDirectory = folder.newFolder();
+        List<String> arguments = new ArrayList<String>(Arrays.asList("-d", outputDirectory.getPath(), "-cp", classPath));
+        for (int i = 0; i < sources.length; i += 2) {
+            File file = new File(sourceDirectory, sources[i]);
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), sources[i + 1].getBytes(StandardCharsets.UTF_8));
+            arguments.add(file.getPath());
+        }
+        assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[arguments.size()])));
+    }
+
+    @Test public void usedClassesAreListed() throws IOException {
+        File presetClasses = folder.newFolder("preset");
+        File consumerClasses = folder.newFolder("consumer");
+        compile(presetClasses, "",
+                "p/Base.java", "package p; public class Base { public native void f(); }",
+                "p/A.java", "package p; public class A extends Base { public native void g(); }",
+                "p/B.java", "package p; public class B { public native void h(A a); }",
+                "p/C.java", "package p; public class C { public static class Inner { public native void i(); } }",
+                "p/D.java", "package p; public class D { }");
+        compile(consumerClasses, presetClasses.getPath(),
+                "app/Main.java", "package app; public class Main { public static void main(String[] args) { new p.A().f(); new p.C.Inner().i(); } }");
+
+        Project project = ProjectBuilder.builder().withProjectDir(folder.newFolder("project")).build();
+        UsageTask task = project.getTasks().create("javacppUsage", UsageTask.class);
+        task.classes = project.files(consumerClasses);
+        task.presetClasses = project.files(presetClasses);
+        task.outputFile = new File(project.getBuildDir(), "javacpp/usage.txt");
+        task.scan();
+        // B takes A as argument, but is not used by the consumer
+        assertEquals(Arrays.asList("p.A", "p.Base", "p.C"), Files.readAllLines(task.outputFile.toPath(), StandardCharsets.UTF_8));
+
+        task.classOrPackageNames = new String[] {"p.A", "p.C"};
+        task.scan();
+        assertEquals(Arrays.asList("p.A", "p.C"), Files.readAllLines(task.outputFile.toPath(), StandardCharsets.UTF_8));
+
+        BuildTask compiler = project.getTasks().create("javacppBuildCompiler", BuildTask.class);
+        compiler.classOrPackageNames = new String[] {"p.*"};
+        compiler.classListFile = task.outputFile;
+        assertArrayEquals(new String[] {"p.A", "p.C"}, compiler.getBuildOptions().classOrPackageNames);
+    }
+
+    @Test public void extensionRegistersTask() {
+        Project project = ProjectBuilder.builder().withProjectDir(folder.getRoot()).build();
+        project.getPlugins().apply("java");
+        project.getPlugins().apply("org.bytedeco.gradle-javacpp-build");
+        ((DefaultProject)project).evaluate();
+        project.getExtensions().getByType(BuildExtension.class).pruneUnusedClasses(new File(folder.getRoot(), "app/classes"));
+
+        UsageTask usage = (UsageTask)project.getTasks().getByName("javacppUsage");
+        BuildTask compiler = (BuildTask)project.getTasks().getByName("javacppBuildCompiler");
+        BuildTask pruned = (BuildTask)project.getTasks().getByName("javacppBuildCompilerPruned");
+        // the libraries that get published still have all classes
+        assertNull(compiler.getClassListFile());
+        assertFalse(compiler.getDependsOn().contains("javacppUsage"));
+        assertEquals(usage.getOutputFile(), pruned.getClassListFile());
+        assertTrue(pruned.getDependsOn().contains("javacppUsage"));
+        assertEquals(new File(project.getBuildDir(), "javacpp/pruned").getAbsolutePath(), pruned.getClassPath()[0]);
+        assertEquals(project.files((Object[])compiler.getClassPath()).getFiles(), usage.getPresetClasses().getFiles());
+        assertNotNull(project.getTasks().findByName("javacppJarPruned"));
+    }
+
+    @Test public void emptyClassListSkipsBuild() throws Exception {
+        Project project = ProjectBuilder.builder().withProjectDir(folder.getRoot()).build();
+        File classListFile = folder.newFile("usage.txt");
+        BuildTask task = project.getTasks().create("javacppBuildCompilerPruned", BuildTask.class);
+        task.classPath = new String[] {folder.newFolder("classes").getPath()};
+        task.classListFile = classListFile;
+        task.outputDirectory = new File(folder.getRoot(), "output");
+        assertTrue(task.readClassList().isEmpty());
+        task.build();
+        assertFalse(task.outputDirectory.exists());
+    }
+}